@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.capture;
+
+/**
+ * Receives the records of a capture file from a CaptureReader. All times are in nanoseconds since the start of
+ * the capture.
+ * @author knokko
+ *
+ */
+public interface CaptureListener {
+	
+	/**
+	 * Receives the metadata of a texture before it is used for the first time. Tiled textures have a negative
+	 * texture id.
+	 */
+	void onTexture(long time, int textureID, int width, int height);
+	
+	/**
+	 * Marks the start of a frame. The commands of the frame will be passed to onClear, onFill and onTexture.
+	 * @param time The time at which the frame was rendered
+	 * @param size The number of commands in the frame
+	 * @param repeated True if the renderer was asked to render exactly the same frame as the previous frame
+	 */
+	void onFrameStart(long time, int size, boolean repeated);
+	
+	void onClear(int argb);
+	
+	void onFill(int argb, float minX, float minY, float maxX, float maxY);
+	
+	void onTexture(int textureID, float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV);
+	
+	void onFrameEnd();
+	
+	void onMouseMove(long time, float x, float y);
+	
+	void onMouseButton(long time, int button, int action);
+	
+	void onKey(long time, int key, int action);
+	
+	void onChar(long time, int codePoint);
+	
+	void onScroll(long time, float amount);
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.capture;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import nl.knokko.gui.render.GLCommandBuffer;
+
+/**
+ * Reads a capture file that was written by a CaptureWriter. The file is memory-mapped, so reading it doesn't
+ * copy it to the heap and it can be read multiple times cheaply.
+ * @author knokko
+ *
+ */
+public class CaptureReader {
+	
+	private final MappedByteBuffer buffer;
+	
+	/**
+	 * Maps the capture file at the given path into memory
+	 * @param path The path of the capture file
+	 * @throws IOException If the file can't be read or is not a capture file
+	 */
+	public CaptureReader(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE)
+				throw new IOException("Capture files larger than 2GB are not supported");
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.remaining() < 8 || buffer.getInt(0) != CaptureWriter.MAGIC)
+			throw new IOException("The file " + path + " is not a capture file");
+		int version = buffer.getInt(4);
+		if (version != CaptureWriter.VERSION)
+			throw new IOException("Unsupported capture version " + version);
+	}
+	
+	/**
+	 * Passes all records of the capture file to the given listener, in the order in which they were written.
+	 * @param listener The listener that should receive the records
+	 */
+	public void read(CaptureListener listener) {
+		int position = 8;
+		int lastFramePosition = -1;
+		int limit = buffer.limit();
+		
+		// A capture that was not closed properly ends without end record, and possibly with an incomplete record
+		while (position + 9 <= limit) {
+			byte type = buffer.get(position);
+			long time = buffer.getLong(position + 1);
+			position += 9;
+			if (type == CaptureWriter.RECORD_END || position + getPayloadSize(type) > limit) {
+				return;
+			} else if (type == CaptureWriter.RECORD_TEXTURE) {
+				listener.onTexture(time, buffer.getInt(position), buffer.getInt(position + 4), buffer.getInt(position + 8));
+				position += 12;
+			} else if (type == CaptureWriter.RECORD_FRAME) {
+				lastFramePosition = position;
+				position = readFrame(position, time, false, listener);
+				if (position == -1)
+					return;
+			} else if (type == CaptureWriter.RECORD_REPEAT_FRAME) {
+				if (lastFramePosition != -1)
+					readFrame(lastFramePosition, time, true, listener);
+			} else if (type == CaptureWriter.RECORD_MOUSE_MOVE) {
+				listener.onMouseMove(time, buffer.getFloat(position), buffer.getFloat(position + 4));
+				position += 8;
+			} else if (type == CaptureWriter.RECORD_MOUSE_BUTTON) {
+				listener.onMouseButton(time, buffer.getInt(position), buffer.getInt(position + 4));
+				position += 8;
+			} else if (type == CaptureWriter.RECORD_KEY) {
+				listener.onKey(time, buffer.getInt(position), buffer.getInt(position + 4));
+				position += 8;
+			} else if (type == CaptureWriter.RECORD_CHAR) {
+				listener.onChar(time, buffer.getInt(position));
+				position += 4;
+			} else if (type == CaptureWriter.RECORD_SCROLL) {
+				listener.onScroll(time, buffer.getFloat(position));
+				position += 4;
+			} else {
+				throw new IllegalStateException("Unknown record type " + type + " at position " + (position - 9));
+			}
+		}
+	}
+	
+	private static int getPayloadSize(byte type) {
+		if (type == CaptureWriter.RECORD_TEXTURE)
+			return 12;
+		if (type == CaptureWriter.RECORD_FRAME || type == CaptureWriter.RECORD_CHAR || type == CaptureWriter.RECORD_SCROLL)
+			return 4;
+		if (type == CaptureWriter.RECORD_MOUSE_MOVE || type == CaptureWriter.RECORD_MOUSE_BUTTON || type == CaptureWriter.RECORD_KEY)
+			return 8;
+		return 0;
+	}
+	
+	/**
+	 * @return The position after the frame, or -1 if the file ended in the middle of the frame
+	 */
+	private int readFrame(int position, long time, boolean repeated, CaptureListener listener) {
+		int limit = buffer.limit();
+		int size = buffer.getInt(position);
+		position += 4;
+		listener.onFrameStart(time, size, repeated);
+		for (int counter = 0; counter < size; counter++) {
+			if (position + 5 > limit)
+				return -1;
+			byte type = buffer.get(position);
+			int id = buffer.getInt(position + 1);
+			position += 5;
+			if (type == GLCommandBuffer.TYPE_CLEAR) {
+				listener.onClear(id);
+			} else if (type == GLCommandBuffer.TYPE_FILL) {
+				if (position + 16 > limit)
+					return -1;
+				listener.onFill(id, buffer.getFloat(position), buffer.getFloat(position + 4), buffer.getFloat(position + 8), buffer.getFloat(position + 12));
+				position += 16;
+			} else {
+				if (position + 32 > limit)
+					return -1;
+				listener.onTexture(id, buffer.getFloat(position), buffer.getFloat(position + 4), buffer.getFloat(position + 8), buffer.getFloat(position + 12), 
+						buffer.getFloat(position + 16), buffer.getFloat(position + 20), buffer.getFloat(position + 24), buffer.getFloat(position + 28));
+				position += 32;
+			}
+		}
+		listener.onFrameEnd();
+		return position;
+	}
+	
+	/**
+	 * @return The size of the capture file in bytes
+	 */
+	public int getSize() {
+		return buffer.limit();
+	}
+}
@@ -0,0 +1,317 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.capture;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.lwjgl.glfw.GLFW;
+
+import nl.knokko.gui.color.GuiColor;
+import nl.knokko.gui.color.SimpleGuiColor;
+import nl.knokko.gui.component.GuiComponent;
+import nl.knokko.gui.keycode.GLKeyConverter;
+import nl.knokko.gui.render.GuiRenderer;
+import nl.knokko.gui.render.SoftwareGuiRenderer;
+import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.loader.GuiTextureLoader;
+import nl.knokko.gui.texture.loader.SoftwareTextureLoader;
+
+/**
+ * Replays a capture file on any GuiRenderer and measures how long every frame takes. The pixels of the captured
+ * textures are not stored in capture files, so this class will create placeholder textures of the same size with
+ * the texture loader of the target renderer.
+ * 
+ * The captured input events can optionally be passed to a GuiComponent.
+ * @author knokko
+ *
+ */
+public class CaptureReplay implements CaptureListener {
+	
+	/**
+	 * Replays a capture file on a SoftwareGuiRenderer, so it doesn't need a window or gpu. The arguments are the
+	 * path of the capture file, the number of iterations (default 1), and the width and height of the framebuffer
+	 * (default 800x600).
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Usage: CaptureReplay <capture file> [iterations] [width] [height]");
+			return;
+		}
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		int width = args.length > 2 ? Integer.parseInt(args[2]) : 800;
+		int height = args.length > 3 ? Integer.parseInt(args[3]) : 600;
+		SoftwareTextureLoader textureLoader = new SoftwareTextureLoader();
+		SoftwareGuiRenderer renderer = new SoftwareGuiRenderer(width, height, textureLoader);
+		
+		// Every frame should be measured, also the ones that are equal to the previous frame
+		renderer.setRenderAlways(true);
+		CaptureReplay replay = new CaptureReplay(renderer, textureLoader);
+		replay.replay(new CaptureReader(Paths.get(args[0])), iterations);
+		replay.printReport(System.out);
+	}
+	
+	private final GuiRenderer renderer;
+	private final GuiTextureLoader textureLoader;
+	
+	private final Map<Integer,BufferedImage> textureImages;
+	private final Map<PartKey,GuiTexture> textures;
+	private final Map<Integer,GuiColor> colors;
+	private final PartKey lookupKey;
+	
+	private GuiComponent inputTarget;
+	private float mouseX;
+	private float mouseY;
+	
+	private boolean realTime;
+	private long replayStartTime;
+	
+	private long frameStartTime;
+	private long frames;
+	private long totalFrameTime;
+	private long minFrameTime;
+	private long maxFrameTime;
+	
+	public CaptureReplay(GuiRenderer renderer, GuiTextureLoader textureLoader) {
+		this.renderer = renderer;
+		this.textureLoader = textureLoader;
+		textureImages = new HashMap<Integer,BufferedImage>();
+		textures = new HashMap<PartKey,GuiTexture>();
+		colors = new HashMap<Integer,GuiColor>();
+		lookupKey = new PartKey();
+		minFrameTime = Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Sets the component that should receive the captured clicks, key presses, typed characters and scrolls.
+	 * @param component The component to send the input to, or null to ignore the input
+	 */
+	public void setInputTarget(GuiComponent component) {
+		inputTarget = component;
+	}
+	
+	/**
+	 * If realTime is true, the replay will wait between frames and events, so they will be replayed at the same
+	 * speed as they were captured. By default, everything is replayed as fast as possible.
+	 */
+	public void setRealTime(boolean realTime) {
+		this.realTime = realTime;
+	}
+	
+	/**
+	 * Replays the given capture the given number of times.
+	 * @param reader The reader of the capture file
+	 * @param iterations The number of times the capture should be replayed
+	 */
+	public void replay(CaptureReader reader, int iterations) {
+		for (int counter = 0; counter < iterations; counter++) {
+			replayStartTime = System.nanoTime();
+			reader.read(this);
+		}
+	}
+	
+	private void waitUntil(long time) {
+		if (realTime) {
+			long sleepTime = time - (System.nanoTime() - replayStartTime);
+			if (sleepTime > 0) {
+				try {
+					Thread.sleep(sleepTime / 1000000, (int) (sleepTime % 1000000));
+				} catch (InterruptedException e) {
+					throw new RuntimeException("Unexpected interrupt", e);
+				}
+			}
+		}
+	}
+	
+	private GuiColor getColor(int argb) {
+		GuiColor color = colors.get(argb);
+		if (color == null) {
+			color = new SimpleGuiColor(argb);
+			colors.put(argb, color);
+		}
+		return color;
+	}
+
+	@Override
+	public void onTexture(long time, int textureID, int width, int height) {
+		if (!textureImages.containsKey(textureID)) {
+			
+			// Use a different gray for every texture so that the replayed frames are not completely flat
+			BufferedImage image = new BufferedImage(Math.max(1, width), Math.max(1, height), BufferedImage.TYPE_INT_ARGB);
+			int gray = 64 + Math.floorMod(textureID * 37, 160);
+			int argb = 0xFF000000 | gray << 16 | gray << 8 | gray;
+			for (int y = 0; y < image.getHeight(); y++)
+				for (int x = 0; x < image.getWidth(); x++)
+					image.setRGB(x, y, argb);
+			textureImages.put(textureID, image);
+		}
+	}
+
+	@Override
+	public void onFrameStart(long time, int size, boolean repeated) {
+		waitUntil(time);
+		frameStartTime = System.nanoTime();
+	}
+
+	@Override
+	public void onClear(int argb) {
+		renderer.clear(getColor(argb));
+	}
+
+	@Override
+	public void onFill(int argb, float minX, float minY, float maxX, float maxY) {
+		renderer.fill(getColor(argb), minX, minY, maxX, maxY);
+	}
+
+	@Override
+	public void onTexture(int textureID, float minX, float minY, float maxX, float maxY, float minU, float minV, float maxU, float maxV) {
+		lookupKey.set(textureID, minU, minV, maxU, maxV);
+		GuiTexture texture = textures.get(lookupKey);
+		if (texture == null) {
+			BufferedImage image = textureImages.get(textureID);
+			if (image == null)
+				return;
+			int width = image.getWidth();
+			int height = image.getHeight();
+			texture = textureLoader.loadTexture(image, Math.round(minU * width), Math.round(minV * height), Math.round(maxU * width), Math.round(maxV * height));
+			PartKey key = new PartKey();
+			key.set(textureID, minU, minV, maxU, maxV);
+			textures.put(key, texture);
+		}
+		renderer.renderTexture(texture, minX, minY, maxX, maxY);
+	}
+
+	@Override
+	public void onFrameEnd() {
+		renderer.maybeRenderNow();
+		long frameTime = System.nanoTime() - frameStartTime;
+		frames++;
+		totalFrameTime += frameTime;
+		minFrameTime = Math.min(minFrameTime, frameTime);
+		maxFrameTime = Math.max(maxFrameTime, frameTime);
+	}
+
+	@Override
+	public void onMouseMove(long time, float x, float y) {
+		mouseX = x;
+		mouseY = y;
+	}
+
+	@Override
+	public void onMouseButton(long time, int button, int action) {
+		if (inputTarget != null && action == GLFW.GLFW_RELEASE) {
+			waitUntil(time);
+			inputTarget.click(mouseX, mouseY, button);
+		}
+	}
+
+	@Override
+	public void onKey(long time, int key, int action) {
+		int[] keys = GLKeyConverter.get(key);
+		if (inputTarget != null && keys != null) {
+			waitUntil(time);
+			for (int guiKey : keys) {
+				if (action == GLFW.GLFW_PRESS || action == GLFW.GLFW_REPEAT)
+					inputTarget.keyPressed(guiKey);
+				else if (action == GLFW.GLFW_RELEASE)
+					inputTarget.keyReleased(guiKey);
+			}
+		}
+	}
+
+	@Override
+	public void onChar(long time, int codePoint) {
+		if (inputTarget != null) {
+			waitUntil(time);
+			for (char character : Character.toChars(codePoint))
+				inputTarget.keyPressed(character);
+		}
+	}
+
+	@Override
+	public void onScroll(long time, float amount) {
+		if (inputTarget != null) {
+			waitUntil(time);
+			inputTarget.scroll(amount);
+		}
+	}
+	
+	public long getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * @return The average time that was needed to issue and render a frame, in nanoseconds
+	 */
+	public long getAverageFrameTime() {
+		return frames == 0 ? 0 : totalFrameTime / frames;
+	}
+	
+	public long getMinFrameTime() {
+		return frames == 0 ? 0 : minFrameTime;
+	}
+	
+	public long getMaxFrameTime() {
+		return maxFrameTime;
+	}
+	
+	public void printReport(PrintStream output) {
+		output.println("Replayed " + frames + " frames");
+		output.println("Average frame time: " + getAverageFrameTime() / 1000 + " us");
+		output.println("Min frame time: " + getMinFrameTime() / 1000 + " us");
+		output.println("Max frame time: " + getMaxFrameTime() / 1000 + " us");
+	}
+	
+	private static class PartKey {
+		
+		private int textureID;
+		private float minU, minV, maxU, maxV;
+		
+		private void set(int textureID, float minU, float minV, float maxU, float maxV) {
+			this.textureID = textureID;
+			this.minU = minU;
+			this.minV = minV;
+			this.maxU = maxU;
+			this.maxV = maxV;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (other instanceof PartKey) {
+				PartKey key = (PartKey) other;
+				return key.textureID == textureID && key.minU == minU && key.minV == minV && key.maxU == maxU && key.maxV == maxV;
+			}
+			return false;
+		}
+		
+		@Override
+		public int hashCode() {
+			return textureID + 31 * Float.floatToIntBits(minU) + 17 * Float.floatToIntBits(minV) + 13 * Float.floatToIntBits(maxU) + 7 * Float.floatToIntBits(maxV);
+		}
+	}
+}
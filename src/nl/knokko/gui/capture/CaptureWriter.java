@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.capture;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import nl.knokko.gui.render.GLCommandBuffer;
+import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.TiledGuiTexture;
+
+/**
+ * Writes the render commands and input events of a window to a capture file while the window is running. The
+ * records are collected in a direct buffer that is written to the file whenever it is full, so long sessions can
+ * be captured without keeping them in memory. Use a CaptureReader to read the file.
+ * 
+ * Tiled textures don't have a single texture id, so they are written with the id -1 - serial instead.
+ * 
+ * If an IOException occurs, it will be printed to the error output and the capture will stop.
+ * @author knokko
+ *
+ */
+public class CaptureWriter {
+	
+	static final int MAGIC = 0x474C4743;
+	static final int VERSION = 1;
+	
+	static final byte RECORD_END = 0;
+	static final byte RECORD_TEXTURE = 1;
+	static final byte RECORD_FRAME = 2;
+	static final byte RECORD_REPEAT_FRAME = 3;
+	static final byte RECORD_MOUSE_MOVE = 10;
+	static final byte RECORD_MOUSE_BUTTON = 11;
+	static final byte RECORD_KEY = 12;
+	static final byte RECORD_CHAR = 13;
+	static final byte RECORD_SCROLL = 14;
+	
+	private static final int BUFFER_SIZE = 1 << 16;
+	
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final long startTime;
+	
+	private final BitSet writtenTextures;
+	private final BitSet writtenTiledTextures;
+	
+	private PrintStream errorOutput;
+	private boolean closed;
+	
+	private long frames;
+	private long writtenBytes;
+	
+	/**
+	 * Creates a new capture file at the given path, or overwrites it if it already exists.
+	 * @param path The path of the capture file
+	 * @throws IOException If the file can't be created
+	 */
+	public CaptureWriter(Path path) throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		startTime = System.nanoTime();
+		writtenTextures = new BitSet();
+		writtenTiledTextures = new BitSet();
+		errorOutput = System.out;
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+	}
+	
+	public CaptureWriter setErrorOutput(PrintStream output) {
+		errorOutput = output;
+		return this;
+	}
+	
+	private void ensure(int bytes) {
+		if (buffer.remaining() < bytes)
+			flush();
+	}
+	
+	private void startRecord(byte type, int size) {
+		ensure(9 + size);
+		buffer.put(type);
+		buffer.putLong(System.nanoTime() - startTime);
+	}
+	
+	/**
+	 * Writes the buffered records to the file
+	 */
+	public void flush() {
+		if (closed) {
+			
+			// Keep room in the buffer for the records that are still being written
+			buffer.clear();
+			return;
+		}
+		buffer.flip();
+		try {
+			while (buffer.hasRemaining())
+				writtenBytes += channel.write(buffer);
+		} catch (IOException ioe) {
+			errorOutput.println("Failed to write capture: " + ioe.getMessage());
+			ioe.printStackTrace(errorOutput);
+			closeChannel();
+		}
+		buffer.clear();
+	}
+	
+	/**
+	 * Writes the metadata of all textures in the given frame that were not written before, followed by the
+	 * commands of the frame.
+	 * @param commands The commands of the frame
+	 */
+	public void writeFrame(GLCommandBuffer commands) {
+		if (closed)
+			return;
+		int size = commands.size();
+		for (int index = 0; index < size; index++) {
+			if (commands.getType(index) == GLCommandBuffer.TYPE_TEXTURE) {
+				GuiTexture texture = commands.getTexture(index);
+				if (texture instanceof TiledGuiTexture) {
+					int serial = ((TiledGuiTexture) texture).getSerial();
+					if (!writtenTiledTextures.get(serial)) {
+						writeTexture(-1 - serial, texture);
+						writtenTiledTextures.set(serial);
+					}
+				} else {
+					int textureID = commands.getID(index);
+					if (textureID >= 0 && !writtenTextures.get(textureID)) {
+						writeTexture(textureID, texture);
+						writtenTextures.set(textureID);
+					}
+				}
+			}
+		}
+		startRecord(RECORD_FRAME, 4);
+		buffer.putInt(size);
+		for (int index = 0; index < size; index++) {
+			byte type = commands.getType(index);
+			ensure(37);
+			if (closed)
+				return;
+			buffer.put(type);
+			if (type == GLCommandBuffer.TYPE_TEXTURE && commands.getTexture(index) instanceof TiledGuiTexture)
+				buffer.putInt(-1 - ((TiledGuiTexture) commands.getTexture(index)).getSerial());
+			else
+				buffer.putInt(commands.getID(index));
+			if (type != GLCommandBuffer.TYPE_CLEAR) {
+				buffer.putFloat(commands.getMinX(index));
+				buffer.putFloat(commands.getMinY(index));
+				buffer.putFloat(commands.getMaxX(index));
+				buffer.putFloat(commands.getMaxY(index));
+			}
+			if (type == GLCommandBuffer.TYPE_TEXTURE) {
+				buffer.putFloat(commands.getMinU(index));
+				buffer.putFloat(commands.getMinV(index));
+				buffer.putFloat(commands.getMaxU(index));
+				buffer.putFloat(commands.getMaxV(index));
+			}
+		}
+		frames++;
+	}
+	
+	/**
+	 * Should be called when the texture with the given id has been deleted, so that the metadata of the next
+	 * texture with the same id will be written. GLGuiWindow.setCapture registers this at the texture loader.
+	 */
+	public void onTextureDeleted(int textureID) {
+		if (textureID >= 0)
+			writtenTextures.clear(textureID);
+	}
+	
+	private void writeTexture(int textureID, GuiTexture texture) {
+		
+		// Estimate the size of the entire texture rather than the size of the part that is used
+		float deltaU = texture.getMaxU() - texture.getMinU();
+		float deltaV = texture.getMaxV() - texture.getMinV();
+		int width = deltaU > 0 ? Math.round(texture.getWidth() / deltaU) : texture.getWidth();
+		int height = deltaV > 0 ? Math.round(texture.getHeight() / deltaV) : texture.getHeight();
+		startRecord(RECORD_TEXTURE, 12);
+		buffer.putInt(textureID);
+		buffer.putInt(width);
+		buffer.putInt(height);
+	}
+	
+	/**
+	 * Writes a record that indicates that the renderer was asked to render the same frame as the previous frame.
+	 */
+	public void writeRepeatFrame() {
+		if (closed)
+			return;
+		startRecord(RECORD_REPEAT_FRAME, 0);
+		frames++;
+	}
+	
+	public void writeMouseMove(float x, float y) {
+		if (closed)
+			return;
+		startRecord(RECORD_MOUSE_MOVE, 8);
+		buffer.putFloat(x);
+		buffer.putFloat(y);
+	}
+	
+	public void writeMouseButton(int button, int action) {
+		if (closed)
+			return;
+		startRecord(RECORD_MOUSE_BUTTON, 8);
+		buffer.putInt(button);
+		buffer.putInt(action);
+	}
+	
+	public void writeKey(int key, int action) {
+		if (closed)
+			return;
+		startRecord(RECORD_KEY, 8);
+		buffer.putInt(key);
+		buffer.putInt(action);
+	}
+	
+	public void writeChar(int codePoint) {
+		if (closed)
+			return;
+		startRecord(RECORD_CHAR, 4);
+		buffer.putInt(codePoint);
+	}
+	
+	public void writeScroll(float amount) {
+		if (closed)
+			return;
+		startRecord(RECORD_SCROLL, 4);
+		buffer.putFloat(amount);
+	}
+	
+	/**
+	 * Writes the end record and all buffered records to the file, and closes the file.
+	 */
+	public void close() {
+		if (closed)
+			return;
+		startRecord(RECORD_END, 0);
+		flush();
+		closeChannel();
+	}
+	
+	private void closeChannel() {
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException ioe) {
+			errorOutput.println("Failed to close capture: " + ioe.getMessage());
+		}
+	}
+	
+	public boolean isClosed() {
+		return closed;
+	}
+	
+	public long getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * @return The number of bytes that have been written to the file so far
+	 */
+	public long getWrittenBytes() {
+		return writtenBytes;
+	}
+}
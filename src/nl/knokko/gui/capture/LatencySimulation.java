@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.capture;
+
+import java.io.PrintStream;
+import java.util.Random;
+
+import nl.knokko.gui.window.Clock;
+import nl.knokko.gui.window.FramePacer;
+import nl.knokko.gui.window.LatencyTracker;
+
+/**
+ * Simulates the run loop of a GLGuiContext with a fake clock to measure the input latency with and without the
+ * render-on-input mode of the FramePacer. The clicks arrive at random times and every update and render takes
+ * a fixed amount of time, so the results don't depend on the speed of the machine and can be reproduced.
+ * 
+ * A click is timestamped when it arrives. While the pacer sleeps, the click is only handled by the next
+ * iteration of the loop. While the pacer waits for events, it is rendered immediately.
+ * @author knokko
+ *
+ */
+public class LatencySimulation implements Clock, FramePacer.Waiter {
+	
+	/**
+	 * Runs the simulation with and without render-on-input and prints the latency reports. The arguments are the
+	 * fps of the loop (default 60), the number of frames (default 3600), the time an update and render take in
+	 * milliseconds (default 2) and the mean time between clicks in milliseconds (default 50).
+	 */
+	public static void main(String[] args) {
+		int fps = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+		int frames = args.length > 1 ? Integer.parseInt(args[1]) : 3600;
+		double renderMillis = args.length > 2 ? Double.parseDouble(args[2]) : 2;
+		double clickMillis = args.length > 3 ? Double.parseDouble(args[3]) : 50;
+		for (boolean renderOnInput : new boolean[] {false, true}) {
+			LatencySimulation simulation = new LatencySimulation(fps, (long) (renderMillis * 1000000), (long) (clickMillis * 1000000), 1);
+			simulation.run(frames, renderOnInput);
+			System.out.println("Render on input: " + renderOnInput);
+			simulation.printReport(System.out);
+		}
+	}
+	
+	private final long frameTime;
+	private final long renderTime;
+	private final long meanClickInterval;
+	private final Random random;
+	
+	private final LatencyTracker tracker;
+	private final FramePacer pacer;
+	
+	private long time;
+	private long nextClick;
+	
+	/**
+	 * @param fps The number of iterations per second of the simulated loop
+	 * @param renderTime The time in nanoseconds that an update or render takes
+	 * @param meanClickInterval The mean time in nanoseconds between 2 clicks
+	 * @param seed The seed of the random click times
+	 */
+	public LatencySimulation(int fps, long renderTime, long meanClickInterval, long seed) {
+		this.frameTime = 1000000000 / fps;
+		this.renderTime = renderTime;
+		this.meanClickInterval = meanClickInterval;
+		this.random = new Random(seed);
+		this.tracker = new LatencyTracker(this);
+		this.pacer = new FramePacer(this, this);
+		this.nextClick = nextClickInterval();
+	}
+	
+	private long nextClickInterval() {
+		return 1 + (long) (-Math.log(1 - random.nextDouble()) * meanClickInterval);
+	}
+	
+	/**
+	 * Simulates the given number of iterations of the run loop
+	 */
+	public void run(int frames, boolean renderOnInput) {
+		pacer.setRenderOnInput(renderOnInput);
+		for (int frame = 0; frame < frames; frame++) {
+			long startTime = time;
+			
+			// Poll the events, update and render
+			deliverClicks(time, false);
+			time += renderTime;
+			tracker.afterRender(true);
+			pacer.waitUntil(startTime + frameTime, () -> {
+				time += renderTime;
+				tracker.afterRender(true);
+			});
+		}
+	}
+	
+	/**
+	 * Timestamps all clicks that arrive before the given time
+	 * @param signal true if the pacer should be notified about the clicks
+	 * @return true if at least 1 click arrived
+	 */
+	private boolean deliverClicks(long until, boolean signal) {
+		boolean delivered = false;
+		long currentTime = time;
+		while (nextClick <= until) {
+			time = nextClick;
+			tracker.onInput(LatencyTracker.Input.CLICK);
+			if (signal)
+				pacer.signalInput();
+			nextClick += nextClickInterval();
+			delivered = true;
+			
+			// waitEvents returns as soon as the first event has been processed
+			if (signal)
+				return true;
+		}
+		time = currentTime;
+		return delivered;
+	}
+	
+	public LatencyTracker getTracker() {
+		return tracker;
+	}
+	
+	public void printReport(PrintStream output) {
+		tracker.printReport(output);
+		output.println("Early renders: " + pacer.getEarlyRenders());
+	}
+
+	@Override
+	public long nanoTime() {
+		return time;
+	}
+
+	@Override
+	public void sleep(long nanos) {
+		
+		// The clicks that arrive while sleeping are timestamped, but they are only rendered after the next poll
+		deliverClicks(time + nanos, false);
+		time += nanos;
+	}
+
+	@Override
+	public void waitEvents(long timeoutNanos) {
+		if (!deliverClicks(time + timeoutNanos, true))
+			time += timeoutNanos;
+	}
+}
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.component;
+
+/**
+ * Components can implement this interface to receive typed text in batches rather than 1 keyPressed(char)
+ * call per character. The GLGuiWindow collects the characters that were typed (or pasted, or entered via an
+ * input method) during a single poll of the events and passes them to textInput at once. If the main component
+ * of the window doesn't implement this interface, it will get a keyPressed(char) call for every character.
+ * 
+ * ParallelGuiMenu implements this interface and passes the batches to its components. A plain GuiMenu is part
+ * of the GLGui library and doesn't implement it, so the text fields in a GuiMenu still get a keyPressed call per
+ * character. Use a ParallelGuiMenu (or implement this interface in the menu) to get batches in menus.
+ * @author knokko
+ *
+ */
+public interface TextInputComponent {
+	
+	/**
+	 * Called when text has been typed. The text can contain characters outside the basic multilingual plane,
+	 * which are represented by surrogate pairs like usual.
+	 * @param text The typed text, which is never empty
+	 */
+	void textInput(String text);
+}
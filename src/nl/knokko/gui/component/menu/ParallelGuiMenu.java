@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.component.menu;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nl.knokko.gui.color.GuiColor;
+import nl.knokko.gui.component.GuiComponent;
+import nl.knokko.gui.component.TextInputComponent;
+import nl.knokko.gui.render.CommandRecorder;
+import nl.knokko.gui.render.GuiRenderer;
+import nl.knokko.gui.render.RecordingGuiRenderer;
+
+/**
+ * A GuiMenu that records the render commands of its components in parallel. The active components are divided
+ * into contiguous groups and every group is rendered into its own RecordingGuiRenderer on a ForkJoinPool.
+ * Afterwards, the recorded commands are appended in the same order as the components, so the frame will be
+ * exactly the same as when the components were rendered one by one.
+ * 
+ * This only works if the render methods of the components don't modify shared state and don't load textures,
+ * since they will be called on other threads. If the renderer of this menu is not a CommandRecorder (for
+ * instance when it is rendered by a different kind of window), the components will be rendered one by one.
+ * 
+ * This menu also passes batches of typed text to its active components. Components that implement
+ * TextInputComponent get the whole batch, the others get a keyPressed call for every char. Subclasses that
+ * override keyPressed(char) should override textInput as well.
+ * @author knokko
+ *
+ */
+public abstract class ParallelGuiMenu extends GuiMenu implements TextInputComponent {
+	
+	private final ForkJoinPool pool;
+	private final List<RecordingGuiRenderer> recorders;
+	private final List<SubComponent> activeComponents;
+	
+	private int componentsPerTask;
+	
+	public ParallelGuiMenu() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param pool The pool the components should be rendered on
+	 */
+	public ParallelGuiMenu(ForkJoinPool pool) {
+		this.pool = pool;
+		this.recorders = new ArrayList<RecordingGuiRenderer>();
+		this.activeComponents = new ArrayList<SubComponent>();
+		this.componentsPerTask = 8;
+	}
+	
+	/**
+	 * Sets the minimum number of components every task should render. Rendering only a few small components
+	 * is not worth the cost of scheduling a task.
+	 */
+	public void setComponentsPerTask(int componentsPerTask) {
+		this.componentsPerTask = Math.max(1, componentsPerTask);
+	}
+	
+	@Override
+	public void render(GuiRenderer renderer) {
+		if (!(renderer instanceof CommandRecorder)) {
+			super.render(renderer);
+			return;
+		}
+		GuiColor background = getBackgroundColor();
+		if (background != null)
+			renderer.clear(background);
+		isIterating++;
+		try {
+			for (SubComponent component : getComponents())
+				if (component.isActive())
+					activeComponents.add(component);
+			int amount = activeComponents.size();
+			int taskCount = Math.min(pool.getParallelism(), (amount + componentsPerTask - 1) / componentsPerTask);
+			if (taskCount <= 1) {
+				for (SubComponent component : activeComponents)
+					component.render(renderer);
+			} else {
+				while (recorders.size() < taskCount)
+					recorders.add(new RecordingGuiRenderer());
+				pool.invoke(new RecordTask(0, taskCount, taskCount));
+				CommandRecorder target = (CommandRecorder) renderer;
+				for (int index = 0; index < taskCount; index++)
+					target.appendCommands(recorders.get(index));
+			}
+		} finally {
+			
+			// If a component throws, the next frame must not see the components or commands of this frame
+			for (int index = 0; index < recorders.size(); index++)
+				recorders.get(index).clearCommands();
+			activeComponents.clear();
+			afterIterating();
+		}
+	}
+	
+	@Override
+	public void textInput(String text) {
+		isIterating++;
+		try {
+			for (SubComponent component : getComponents()) {
+				if (component.isActive()) {
+					GuiComponent child = component.getComponent();
+					if (child instanceof TextInputComponent) {
+						((TextInputComponent) child).textInput(text);
+					} else {
+						for (int index = 0; index < text.length(); index++)
+							child.keyPressed(text.charAt(index));
+					}
+				}
+			}
+		} finally {
+			afterIterating();
+		}
+	}
+	
+	private class RecordTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final int minTask;
+		private final int boundTask;
+		private final int taskCount;
+		
+		private RecordTask(int minTask, int boundTask, int taskCount) {
+			this.minTask = minTask;
+			this.boundTask = boundTask;
+			this.taskCount = taskCount;
+		}
+
+		@Override
+		protected void compute() {
+			if (boundTask - minTask > 1) {
+				int middle = (minTask + boundTask) / 2;
+				invokeAll(new RecordTask(minTask, middle, taskCount), new RecordTask(middle, boundTask, taskCount));
+			} else {
+				RecordingGuiRenderer recorder = recorders.get(minTask);
+				int amount = activeComponents.size();
+				int bound = (minTask + 1) * amount / taskCount;
+				for (int index = minTask * amount / taskCount; index < bound; index++)
+					activeComponents.get(index).render(recorder);
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import nl.knokko.gui.color.GuiColor;
+import nl.knokko.gui.texture.GuiTexture;
+
+/**
+ * The GuiRenderer that is returned by the getArea method of the RecordingGuiRenderer. Every area knows its
+ * transform to screen coordinates and the part of the screen it can render on, so commands are transformed
+ * and clipped once and then added directly to the command buffer of the root renderer, regardless of how deeply
+ * the areas are nested. If the visible part is empty because the area is off the screen or outside the area of
+ * its parent, everything rendered with this renderer (or its sub areas) will be ignored immediately.
+ * 
+ * The areas are reused by their root renderer in the next frame, so they should not be kept after the render
+ * method they were passed to returns.
+ * @author knokko
+ *
+ */
+public class AreaGuiRenderer extends GuiRenderer implements CommandRecorder {
+	
+	private final RecordingGuiRenderer root;
+	
+	private float screenMinX;
+	private float screenMinY;
+	private float screenDeltaX;
+	private float screenDeltaY;
+	
+	float visibleMinX;
+	float visibleMinY;
+	float visibleMaxX;
+	float visibleMaxY;
+	
+	private boolean visible;
+	
+	AreaGuiRenderer(RecordingGuiRenderer root) {
+		this.root = root;
+	}
+	
+	/**
+	 * Makes this renderer the area (minX, minY, maxX, maxY) of a parent with the given screen transform and
+	 * visible rectangle.
+	 */
+	void set(float parentScreenMinX, float parentScreenMinY, float parentScreenDeltaX, float parentScreenDeltaY, 
+			float parentVisibleMinX, float parentVisibleMinY, float parentVisibleMaxX, float parentVisibleMaxY, 
+			float minX, float minY, float maxX, float maxY) {
+		screenMinX = parentScreenMinX + minX * parentScreenDeltaX;
+		screenMinY = parentScreenMinY + minY * parentScreenDeltaY;
+		screenDeltaX = (maxX - minX) * parentScreenDeltaX;
+		screenDeltaY = (maxY - minY) * parentScreenDeltaY;
+		
+		float screenMaxX = screenMinX + screenDeltaX;
+		float screenMaxY = screenMinY + screenDeltaY;
+		visibleMinX = Math.max(parentVisibleMinX, Math.min(screenMinX, screenMaxX));
+		visibleMinY = Math.max(parentVisibleMinY, Math.min(screenMinY, screenMaxY));
+		visibleMaxX = Math.min(parentVisibleMaxX, Math.max(screenMinX, screenMaxX));
+		visibleMaxY = Math.min(parentVisibleMaxY, Math.max(screenMinY, screenMaxY));
+		visible = visibleMinX <= visibleMaxX && visibleMinY <= visibleMaxY;
+		if (!visible)
+			root.onCulledArea();
+	}
+	
+	/**
+	 * @return false if nothing rendered with this renderer can end up on the screen
+	 */
+	public boolean isVisible() {
+		return visible;
+	}
+	
+	@Override
+	public GuiRenderer getArea(float minX, float minY, float maxX, float maxY) {
+		// All sub areas of an invisible area are invisible as well, so there is no need to create them
+		if (!visible)
+			return this;
+		return root.obtainArea(screenMinX, screenMinY, screenDeltaX, screenDeltaY, 
+				visibleMinX, visibleMinY, visibleMaxX, visibleMaxY, minX, minY, maxX, maxY);
+	}
+	
+	/**
+	 * Checks whether the given rectangle in screen coordinates intersects the visible part of this area.
+	 */
+	private boolean isVisible(float minX, float minY, float maxX, float maxY) {
+		return Math.min(minX, maxX) <= visibleMaxX && Math.max(minX, maxX) >= visibleMinX 
+				&& Math.min(minY, maxY) <= visibleMaxY && Math.max(minY, maxY) >= visibleMinY;
+	}
+	
+	@Override
+	public void renderTexture(GuiTexture texture, float minX, float minY, float maxX, float maxY) {
+		if (visible) {
+			float screenMinX = this.screenMinX + minX * screenDeltaX;
+			float screenMinY = this.screenMinY + minY * screenDeltaY;
+			float screenMaxX = this.screenMinX + maxX * screenDeltaX;
+			float screenMaxY = this.screenMinY + maxY * screenDeltaY;
+			
+			// Don't render stuff that is completely outside the visible part of this area
+			if (isVisible(screenMinX, screenMinY, screenMaxX, screenMaxY))
+				root.commands.addTexture(texture, screenMinX, screenMinY, screenMaxX, screenMaxY);
+		}
+	}
+	
+	@Override
+	public void fill(GuiColor color, float minX, float minY, float maxX, float maxY) {
+		if (visible) {
+			float screenMinX = this.screenMinX + minX * screenDeltaX;
+			float screenMinY = this.screenMinY + minY * screenDeltaY;
+			float screenMaxX = this.screenMinX + maxX * screenDeltaX;
+			float screenMaxY = this.screenMinY + maxY * screenDeltaY;
+			
+			// Don't render stuff that is completely outside the visible part of this area
+			if (isVisible(screenMinX, screenMinY, screenMaxX, screenMaxY))
+				root.commands.addFill(GLCommandBuffer.toARGB(color), screenMinX, screenMinY, screenMaxX, screenMaxY);
+		}
+	}
+	
+	@Override
+	public void clear(GuiColor color) {
+		if (visible)
+			root.commands.addFill(GLCommandBuffer.toARGB(color), screenMinX, screenMinY, screenMinX + screenDeltaX, screenMinY + screenDeltaY);
+	}
+	
+	@Override
+	public void appendCommands(RecordingGuiRenderer recorder) {
+		if (visible) {
+			root.commands.appendTransformed(recorder.commands, screenMinX, screenMinY, screenDeltaX, screenDeltaY, 
+					visibleMinX, visibleMinY, visibleMaxX, visibleMaxY);
+			root.appendAreas(recorder, screenMinX, screenMinY, screenDeltaX, screenDeltaY, 
+					visibleMinX, visibleMinY, visibleMaxX, visibleMaxY);
+		}
+		root.culledAreas += recorder.culledAreas;
+	}
+}
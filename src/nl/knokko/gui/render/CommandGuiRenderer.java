@@ -0,0 +1,165 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import java.util.function.IntPredicate;
+
+import nl.knokko.gui.capture.CaptureWriter;
+
+/**
+ * The base class for the parent renderers that record their commands into a GLCommandBuffer. It takes care of
+ * comparing the frames, culling and the areas, so subclasses only need to execute the commands of the frames
+ * that need to be rendered.
+ * @author knokko
+ *
+ */
+public abstract class CommandGuiRenderer extends RecordingGuiRenderer {
+	
+	private GLCommandBuffer previousCommands;
+	
+	private boolean renderAlways;
+	
+	private final GLCullingPass cullingPass;
+	private boolean culling;
+	
+	private int previousCulledAreas;
+	
+	private CaptureWriter capture;
+	
+	private SpatialIndex spatialIndex;
+	
+	/**
+	 * @param opaqueTextures Should return true for the ids of textures that don't have transparent pixels
+	 */
+	public CommandGuiRenderer(IntPredicate opaqueTextures) {
+		previousCommands = new GLCommandBuffer();
+		cullingPass = new GLCullingPass(opaqueTextures);
+		culling = true;
+	}
+	
+	/**
+	 * Executes all commands of the given buffer that were not culled. This method will only be called for
+	 * frames that differ from the previous frame, unless the renderer should render always.
+	 * @param commands The commands of the frame to render
+	 */
+	protected abstract void renderNow(GLCommandBuffer commands);
+	
+	/**
+	 * @param index The index of a command in the buffer that is being rendered
+	 * @return true if the command at the given index should be skipped
+	 */
+	protected boolean isCulled(int index) {
+		return culling && cullingPass.isCulled(index);
+	}
+
+	@Override
+	public void setRenderAlways(boolean renderAlways) {
+		super.setRenderAlways(renderAlways);
+		this.renderAlways = renderAlways;
+	}
+	
+	@Override
+	public void maybeRenderNow() {
+		boolean changed = !commands.matches(previousCommands);
+		if (capture != null) {
+			if (changed)
+				capture.writeFrame(commands);
+			else
+				capture.writeRepeatFrame();
+		}
+		if (renderAlways || changed) {
+			if (culling)
+				cullingPass.cull(commands);
+			renderNow(commands);
+			if (spatialIndex != null)
+				buildIndex(spatialIndex);
+			GLCommandBuffer oldCommands = previousCommands;
+			previousCommands = commands;
+			commands = oldCommands;
+		}
+		previousCulledAreas = culledAreas;
+		clearCommands();
+	}
+	
+	/**
+	 * Enables or disables building a spatial index of the areas of every rendered frame.
+	 */
+	public void setSpatialIndexing(boolean enabled) {
+		if (enabled && spatialIndex == null)
+			spatialIndex = new SpatialIndex(32);
+		else if (!enabled)
+			spatialIndex = null;
+	}
+	
+	/**
+	 * @return The spatial index of the areas of the last rendered frame, or null if spatial indexing is disabled
+	 */
+	public SpatialIndex getSpatialIndex() {
+		return spatialIndex;
+	}
+	
+	/**
+	 * Sets the capture writer that every frame of this renderer should be written to.
+	 * @param capture The capture writer, or null to stop capturing
+	 */
+	public void setCapture(CaptureWriter capture) {
+		this.capture = capture;
+	}
+	
+	/**
+	 * @return The commands that were rendered most recently
+	 */
+	public GLCommandBuffer getPreviousCommands() {
+		return previousCommands;
+	}
+	
+	/**
+	 * @return The estimated number of bytes that are used by the command buffers of this renderer
+	 */
+	protected long getCommandMemoryUsage() {
+		return previousCommands.getMemoryUsage() + commands.getMemoryUsage();
+	}
+	
+	/**
+	 * Enables or disables the culling of quads that are hidden behind opaque quads. Culling is enabled by default.
+	 * @param culling true to enable culling, false to disable it
+	 */
+	public void setCulling(boolean culling) {
+		this.culling = culling;
+	}
+	
+	/**
+	 * @return The culling pass of this renderer, which also keeps the culling statistics
+	 */
+	public GLCullingPass getCullingPass() {
+		return cullingPass;
+	}
+	
+	/**
+	 * @return The number of areas that were skipped during the last frame because they were not visible
+	 */
+	public int getCulledAreas() {
+		return previousCulledAreas;
+	}
+}
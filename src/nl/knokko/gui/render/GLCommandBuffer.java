@@ -0,0 +1,293 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import nl.knokko.gui.color.GuiColor;
+import nl.knokko.gui.texture.DynamicGuiTexture;
+import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.TiledGuiTexture;
+
+/**
+ * A reusable list of render commands for the GL renderer. Unlike the RenderCommand objects of the GuiRenderer,
+ * the commands are stored in primitive arrays that grow when needed, but are never reallocated after that.
+ * While commands are being added, a hash of the frame is computed so that the renderer can compare 2 frames
+ * without walking over all commands.
+ * @author knokko
+ *
+ */
+public class GLCommandBuffer {
+	
+	public static final byte TYPE_TEXTURE = 0;
+	public static final byte TYPE_FILL = 1;
+	public static final byte TYPE_CLEAR = 2;
+	
+	private static final long HASH_SEED = 0xcbf29ce484222325L;
+	
+	/**
+	 * Packs the given color into an int in the same ARGB format as java.awt.Color.getRGB() does.
+	 * @param color The color to pack
+	 * @return the packed ARGB value of the color
+	 */
+	public static int toARGB(GuiColor color) {
+		return toByte(color.getAlphaF()) << 24 | toByte(color.getRedF()) << 16 | toByte(color.getGreenF()) << 8 | toByte(color.getBlueF());
+	}
+	
+	private static int toByte(float value) {
+		return (int) (value * 255 + 0.5f) & 0xFF;
+	}
+	
+	private static long mix(long hash, int value) {
+		hash = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+	
+	private static long mix(long hash, float value) {
+		return mix(hash, Float.floatToIntBits(value));
+	}
+	
+	private byte[] types;
+	private int[] ids;
+	private float[] bounds;
+	private float[] uvs;
+	private GuiTexture[] textures;
+	
+	private int size;
+	private long hash;
+	
+	public GLCommandBuffer(int initialCapacity) {
+		types = new byte[initialCapacity];
+		ids = new int[initialCapacity];
+		bounds = new float[4 * initialCapacity];
+		uvs = new float[4 * initialCapacity];
+		textures = new GuiTexture[initialCapacity];
+		hash = HASH_SEED;
+	}
+	
+	public GLCommandBuffer() {
+		this(200);
+	}
+	
+	private int nextIndex() {
+		if (size == types.length) {
+			int newCapacity = Math.max(16, 2 * size);
+			byte[] newTypes = new byte[newCapacity];
+			System.arraycopy(types, 0, newTypes, 0, size);
+			types = newTypes;
+			int[] newIDs = new int[newCapacity];
+			System.arraycopy(ids, 0, newIDs, 0, size);
+			ids = newIDs;
+			float[] newBounds = new float[4 * newCapacity];
+			System.arraycopy(bounds, 0, newBounds, 0, 4 * size);
+			bounds = newBounds;
+			float[] newUVs = new float[4 * newCapacity];
+			System.arraycopy(uvs, 0, newUVs, 0, 4 * size);
+			uvs = newUVs;
+			GuiTexture[] newTextures = new GuiTexture[newCapacity];
+			System.arraycopy(textures, 0, newTextures, 0, size);
+			textures = newTextures;
+		}
+		return size++;
+	}
+	
+	private void putBounds(int index, float minX, float minY, float maxX, float maxY) {
+		int offset = 4 * index;
+		bounds[offset] = minX;
+		bounds[offset + 1] = minY;
+		bounds[offset + 2] = maxX;
+		bounds[offset + 3] = maxY;
+		hash = mix(mix(mix(mix(hash, minX), minY), maxX), maxY);
+	}
+	
+	public void addTexture(GuiTexture texture, float minX, float minY, float maxX, float maxY) {
+		int index = nextIndex();
+		types[index] = TYPE_TEXTURE;
+		textures[index] = texture;
+		int textureID = texture.getTextureID();
+		ids[index] = textureID;
+		int offset = 4 * index;
+		uvs[offset] = texture.getMinU();
+		uvs[offset + 1] = texture.getMinV();
+		uvs[offset + 2] = texture.getMaxU();
+		uvs[offset + 3] = texture.getMaxV();
+		hash = mix(mix(hash, TYPE_TEXTURE), textureID);
+		hash = mix(mix(mix(mix(hash, uvs[offset]), uvs[offset + 1]), uvs[offset + 2]), uvs[offset + 3]);
+		if (texture instanceof DynamicGuiTexture)
+			hash = mix(hash, ((DynamicGuiTexture) texture).getVersion());
+		
+		// All tiled textures have texture id 0 and the full UV range, so only their serial tells them apart
+		if (texture instanceof TiledGuiTexture)
+			hash = mix(hash, ((TiledGuiTexture) texture).getSerial());
+		putBounds(index, minX, minY, maxX, maxY);
+	}
+	
+	public void addFill(int argb, float minX, float minY, float maxX, float maxY) {
+		int index = nextIndex();
+		types[index] = TYPE_FILL;
+		ids[index] = argb;
+		hash = mix(mix(hash, TYPE_FILL), argb);
+		putBounds(index, minX, minY, maxX, maxY);
+	}
+	
+	public void addClear(int argb) {
+		int index = nextIndex();
+		types[index] = TYPE_CLEAR;
+		ids[index] = argb;
+		hash = mix(mix(hash, TYPE_CLEAR), argb);
+	}
+	
+	/**
+	 * Adds all commands of the other buffer to the end of this buffer. The hash of this buffer will be the same
+	 * as if the commands were added one by one.
+	 * @param other The buffer to copy the commands from
+	 */
+	public void append(GLCommandBuffer other) {
+		for (int index = 0; index < other.size; index++) {
+			byte type = other.types[index];
+			int offset = 4 * index;
+			if (type == TYPE_TEXTURE)
+				addTexture(other.textures[index], other.bounds[offset], other.bounds[offset + 1], other.bounds[offset + 2], other.bounds[offset + 3]);
+			else if (type == TYPE_FILL)
+				addFill(other.ids[index], other.bounds[offset], other.bounds[offset + 1], other.bounds[offset + 2], other.bounds[offset + 3]);
+			else
+				addClear(other.ids[index]);
+		}
+	}
+	
+	/**
+	 * Adds all commands of the other buffer to the end of this buffer after transforming their bounds. The bounds
+	 * are transformed like x -> offsetX + x * scaleX, so the other buffer covers the rectangle from (offsetX, 
+	 * offsetY) to (offsetX + scaleX, offsetY + scaleY). Clear commands become fill commands for that rectangle
+	 * and commands that end up completely outside the visible rectangle are skipped.
+	 */
+	public void appendTransformed(GLCommandBuffer other, float offsetX, float offsetY, float scaleX, float scaleY, 
+			float visibleMinX, float visibleMinY, float visibleMaxX, float visibleMaxY) {
+		for (int index = 0; index < other.size; index++) {
+			byte type = other.types[index];
+			int offset = 4 * index;
+			float minX, minY, maxX, maxY;
+			if (type == TYPE_CLEAR) {
+				minX = offsetX;
+				minY = offsetY;
+				maxX = offsetX + scaleX;
+				maxY = offsetY + scaleY;
+			} else {
+				minX = offsetX + other.bounds[offset] * scaleX;
+				minY = offsetY + other.bounds[offset + 1] * scaleY;
+				maxX = offsetX + other.bounds[offset + 2] * scaleX;
+				maxY = offsetY + other.bounds[offset + 3] * scaleY;
+			}
+			if (Math.min(minX, maxX) > visibleMaxX || Math.max(minX, maxX) < visibleMinX 
+					|| Math.min(minY, maxY) > visibleMaxY || Math.max(minY, maxY) < visibleMinY)
+				continue;
+			if (type == TYPE_TEXTURE)
+				addTexture(other.textures[index], minX, minY, maxX, maxY);
+			else
+				addFill(other.ids[index], minX, minY, maxX, maxY);
+		}
+	}
+	
+	/**
+	 * Removes all commands from this buffer, but keeps the arrays so that they can be reused for the next frame.
+	 */
+	public void clear() {
+		// Don't keep textures alive just because they were rendered once
+		for (int index = 0; index < size; index++)
+			textures[index] = null;
+		size = 0;
+		hash = HASH_SEED;
+	}
+	
+	/**
+	 * Checks whether this buffer would render the same frame as the other buffer. Only the number of commands
+	 * and the frame hashes are compared, so this method doesn't depend on the number of commands.
+	 * @param other The buffer to compare with
+	 * @return true if both buffers contain the same commands, false otherwise
+	 */
+	public boolean matches(GLCommandBuffer other) {
+		return size == other.size && hash == other.hash;
+	}
+	
+	/**
+	 * @return The estimated number of bytes that are occupied by the arrays of this buffer
+	 */
+	public long getMemoryUsage() {
+		return types.length + 4L * ids.length + 4L * bounds.length + 4L * uvs.length + 8L * textures.length;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public long getHash() {
+		return hash;
+	}
+	
+	public byte getType(int index) {
+		return types[index];
+	}
+	
+	/**
+	 * @param index The index of the command
+	 * @return the texture id for texture commands, or the ARGB color for fill and clear commands
+	 */
+	public int getID(int index) {
+		return ids[index];
+	}
+	
+	public GuiTexture getTexture(int index) {
+		return textures[index];
+	}
+	
+	public float getMinX(int index) {
+		return bounds[4 * index];
+	}
+	
+	public float getMinY(int index) {
+		return bounds[4 * index + 1];
+	}
+	
+	public float getMaxX(int index) {
+		return bounds[4 * index + 2];
+	}
+	
+	public float getMaxY(int index) {
+		return bounds[4 * index + 3];
+	}
+	
+	public float getMinU(int index) {
+		return uvs[4 * index];
+	}
+	
+	public float getMinV(int index) {
+		return uvs[4 * index + 1];
+	}
+	
+	public float getMaxU(int index) {
+		return uvs[4 * index + 2];
+	}
+	
+	public float getMaxV(int index) {
+		return uvs[4 * index + 3];
+	}
+}
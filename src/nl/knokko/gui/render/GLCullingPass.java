@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Determines which commands of a GLCommandBuffer don't need to be rendered because they are off the screen
+ * or because they are completely covered by opaque quads (or a clear) that will be rendered after them. This
+ * class doesn't need OpenGL, so it can also be used without window.
+ * @author knokko
+ *
+ */
+public class GLCullingPass {
+	
+	/**
+	 * The maximum number of opaque quads that will be remembered as occluder. When more opaque quads are found,
+	 * only the largest ones will be kept.
+	 */
+	private static final int MAX_OCCLUDERS = 16;
+	
+	private final IntPredicate opaqueTextures;
+	
+	private boolean[] culled;
+	
+	private final float[] occluders;
+	private final float[] occluderAreas;
+	private int numOccluders;
+	
+	private int culledQuads;
+	private float savedArea;
+	
+	private long totalCulledQuads;
+	private double totalSavedArea;
+	
+	/**
+	 * @param opaqueTextures Should return true for the ids of textures that don't have transparent pixels
+	 */
+	public GLCullingPass(IntPredicate opaqueTextures) {
+		this.opaqueTextures = opaqueTextures;
+		this.culled = new boolean[200];
+		this.occluders = new float[4 * MAX_OCCLUDERS];
+		this.occluderAreas = new float[MAX_OCCLUDERS];
+	}
+	
+	/**
+	 * Determines which commands of the given buffer can be skipped. Use isCulled(index) to find out the result.
+	 * @param commands The commands of the frame that is about to be rendered
+	 */
+	public void cull(GLCommandBuffer commands) {
+		int size = commands.size();
+		if (culled.length < size)
+			culled = new boolean[Math.max(size, 2 * culled.length)];
+		numOccluders = 0;
+		culledQuads = 0;
+		savedArea = 0;
+		
+		// Walk backwards because only quads that are rendered later can cover a quad
+		boolean cleared = false;
+		for (int index = size - 1; index >= 0; index--) {
+			byte type = commands.getType(index);
+			if (type == GLCommandBuffer.TYPE_CLEAR) {
+				culled[index] = cleared;
+				cleared = true;
+				continue;
+			}
+			
+			// The bounds are swapped when a texture is rendered mirrored
+			float minX = Math.max(0, Math.min(commands.getMinX(index), commands.getMaxX(index)));
+			float minY = Math.max(0, Math.min(commands.getMinY(index), commands.getMaxY(index)));
+			float maxX = Math.min(1, Math.max(commands.getMinX(index), commands.getMaxX(index)));
+			float maxY = Math.min(1, Math.max(commands.getMinY(index), commands.getMaxY(index)));
+			if (minX >= maxX || minY >= maxY) {
+				culled[index] = true;
+				culledQuads++;
+			} else if (cleared || isCovered(minX, minY, maxX, maxY)) {
+				culled[index] = true;
+				culledQuads++;
+				savedArea += (maxX - minX) * (maxY - minY);
+			} else {
+				culled[index] = false;
+				boolean opaque;
+				if (type == GLCommandBuffer.TYPE_FILL)
+					opaque = commands.getID(index) >>> 24 == 0xFF;
+				else
+					opaque = opaqueTextures.test(commands.getID(index));
+				if (opaque)
+					addOccluder(minX, minY, maxX, maxY);
+			}
+		}
+		totalCulledQuads += culledQuads;
+		totalSavedArea += savedArea;
+	}
+	
+	private boolean isCovered(float minX, float minY, float maxX, float maxY) {
+		for (int occluder = 0; occluder < numOccluders; occluder++) {
+			int offset = 4 * occluder;
+			if (occluders[offset] <= minX && occluders[offset + 1] <= minY && occluders[offset + 2] >= maxX && occluders[offset + 3] >= maxY)
+				return true;
+		}
+		return false;
+	}
+	
+	private void addOccluder(float minX, float minY, float maxX, float maxY) {
+		float area = (maxX - minX) * (maxY - minY);
+		int target;
+		if (numOccluders < MAX_OCCLUDERS) {
+			target = numOccluders++;
+		} else {
+			target = 0;
+			for (int occluder = 1; occluder < MAX_OCCLUDERS; occluder++)
+				if (occluderAreas[occluder] < occluderAreas[target])
+					target = occluder;
+			if (occluderAreas[target] >= area)
+				return;
+		}
+		int offset = 4 * target;
+		occluders[offset] = minX;
+		occluders[offset + 1] = minY;
+		occluders[offset + 2] = maxX;
+		occluders[offset + 3] = maxY;
+		occluderAreas[target] = area;
+	}
+	
+	/**
+	 * @param index The index of a command in the buffer that was passed to the last call to cull()
+	 * @return true if the command at the given index doesn't need to be rendered
+	 */
+	public boolean isCulled(int index) {
+		return culled[index];
+	}
+	
+	/**
+	 * @return The number of quads that were culled during the last call to cull()
+	 */
+	public int getCulledQuads() {
+		return culledQuads;
+	}
+	
+	/**
+	 * Estimates how much overdraw was saved during the last call to cull(). The unit is the size of the screen,
+	 * so a value of 2 means that the culled quads would have covered the entire screen twice.
+	 * @return The sum of the visible areas of the quads that were culled because they were covered
+	 */
+	public float getSavedArea() {
+		return savedArea;
+	}
+	
+	public long getTotalCulledQuads() {
+		return totalCulledQuads;
+	}
+	
+	public double getTotalSavedArea() {
+		return totalSavedArea;
+	}
+}
@@ -23,13 +23,8 @@
  *******************************************************************************/
 package nl.knokko.gui.render;
 
-import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFW;
@@ -40,13 +35,15 @@ import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
 
 import nl.knokko.gui.color.GuiColor;
+import nl.knokko.gui.shader.GuiShader;
 import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.TiledGuiTexture;
 import nl.knokko.gui.texture.loader.GLGuiTextureLoader;
+import nl.knokko.gui.texture.loader.TextureVariantSelector;
+import nl.knokko.gui.util.GLCharBuilder;
 import nl.knokko.gui.window.GLGuiWindow;
 
-import static nl.knokko.gui.shader.GuiShader.GUI_SHADER;
-
-public class GLGuiRenderer extends GuiRenderer {
+public class GLGuiRenderer extends CommandGuiRenderer {
 	
 	private static final float[] QUAD = {0,1, 0,0, 1,1, 1,0};
 	
@@ -77,30 +74,48 @@ public class GLGuiRenderer extends GuiRenderer {
 	private int quadVBO;
 	
 	private final GLGuiWindow window;
+	private final int[] visibleTiles = new int[4];
+	private GuiShader shader;
+	
+	private int viewportWidth;
+	private int viewportHeight;
+	
+	private long swapCount;
 	
-	private Map<GuiColor,GuiTexture> colorMap;
-	private GLGuiTextureLoader textureLoader;
+	private FrameMetrics metrics;
+	private boolean gpuTiming;
+	private GpuTimer gpuTimer;
+	private GpuTimer retiredGpuTimer;
+	
+	private final long[] cpuPassTimes = new long[RenderPass.values().length];
+	private RenderPass cpuPass;
+	private long passStartTime;
 	
 	public GLGuiRenderer(GLGuiWindow window, GLGuiTextureLoader loader){
-		textureLoader = loader;
+		super(loader::isOpaque);
 		this.window = window;
 	}
 	
 	public void init(){
+		shader = window.getContext().getShader();
 		loadModel();
-		colorMap = new HashMap<GuiColor,GuiTexture>();
 	}
 	
 	public void start(){
 		IntBuffer widthBuffer = BufferUtils.createIntBuffer(1);
 		IntBuffer heightBuffer = BufferUtils.createIntBuffer(1);
 		GLFW.glfwGetWindowSize(window.getWindowID(), widthBuffer, heightBuffer);
-		GL11.glViewport(0, 0, widthBuffer.get(), heightBuffer.get());
-		GUI_SHADER.start();
+		viewportWidth = widthBuffer.get();
+		viewportHeight = heightBuffer.get();
+		GL11.glViewport(0, 0, viewportWidth, viewportHeight);
+		shader.start();
 		GL30.glBindVertexArray(quadVAO);
 		GL20.glEnableVertexAttribArray(0);
 		GL11.glEnable(GL11.GL_BLEND);
-		GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		if (window.getContext().getTextureLoader().isPremultipliedAlpha())
+			GL11.glBlendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+		else
+			GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
 		GL11.glDisable(GL11.GL_DEPTH_TEST);
 	}
 	
@@ -109,60 +124,232 @@ public class GLGuiRenderer extends GuiRenderer {
 		GL11.glDisable(GL11.GL_BLEND);
 		GL20.glDisableVertexAttribArray(0);
 		GL30.glBindVertexArray(0);
-		GUI_SHADER.stop();
+		shader.stop();
 	}
 	
 	public void clean(){
 		GL30.glDeleteVertexArrays(quadVAO);
 		GL15.glDeleteBuffers(quadVBO);
-		GUI_SHADER.clean();
+		retireGpuTimer();
+		cleanRetiredGpuTimer();
 	}
-
-	@Override
-	public GuiRenderer getArea(float minX, float minY, float maxX, float maxY) {
-		return new RelativeGuiRenderer.Static(this, minX, minY, maxX, maxY);
+	
+	/**
+	 * @return The number of times this renderer has swapped the buffers of its window
+	 */
+	public long getSwapCount() {
+		return swapCount;
+	}
+	
+	/**
+	 * Sets the metrics that will receive the CPU time of every render pass, the time needed to swap the
+	 * buffers and, if GPU timing is enabled, the GPU time of every render pass.
+	 * @param metrics The metrics to record to, or null to stop timing
+	 */
+	public void setMetrics(FrameMetrics metrics) {
+		this.metrics = metrics;
+		
+		// The timer publishes to the old metrics, so a new one will be created for the next frame
+		retireGpuTimer();
+	}
+	
+	public FrameMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Enables or disables GPU timing with timer queries. The results are published to the metrics of this
+	 * renderer a few frames after they were measured. If the OpenGL context doesn't support timer queries, the
+	 * GPU times will all be 0. GPU timing has no effect while this renderer has no metrics.
+	 * 
+	 * Disabling GPU timing must be done while the OpenGL context of the window is current.
+	 */
+	public void setGpuTiming(boolean enabled) {
+		gpuTiming = enabled;
+		if (!enabled)
+			retireGpuTimer();
+	}
+	
+	/**
+	 * Stops using the current GPU timer. Its queries are deleted at the start of the next frame, because the
+	 * OpenGL context might not be current when the setters are called.
+	 */
+	private void retireGpuTimer() {
+		// A new timer is only created after the retired timer has been cleaned, so there is at most 1 retired timer
+		if (gpuTimer != null) {
+			retiredGpuTimer = gpuTimer;
+			gpuTimer = null;
+		}
+	}
+	
+	private void cleanRetiredGpuTimer() {
+		if (retiredGpuTimer != null) {
+			retiredGpuTimer.clean();
+			retiredGpuTimer = null;
+		}
+	}
+	
+	/**
+	 * @return The timer that measures the GPU times, or null if GPU timing is disabled or no frame has been
+	 * rendered since it was enabled
+	 */
+	public GpuTimer getGpuTimer() {
+		return gpuTimer;
+	}
+	
+	private void beginPass(RenderPass pass) {
+		if (pass != cpuPass) {
+			long time = System.nanoTime();
+			if (cpuPass != null)
+				cpuPassTimes[cpuPass.ordinal()] += time - passStartTime;
+			passStartTime = time;
+			cpuPass = pass;
+			if (gpuTimer != null)
+				gpuTimer.beginPass(pass);
+		}
+	}
+	
+	/**
+	 * Estimates how much memory this renderer uses on its own, so without the textures and shader that it
+	 * shares with the other windows of its GLGuiContext.
+	 * @return The estimated memory usage in bytes
+	 */
+	public long getMemoryUsage() {
+		return getCommandMemoryUsage() + QUAD.length * 4;
 	}
 
 	@Override
 	void renderTextureNow(GuiTexture texture, float minX, float minY, float maxX, float maxY) {
+		if (texture instanceof TiledGuiTexture)
+			renderTiled((TiledGuiTexture) texture, minX, minY, maxX, maxY);
+		else
+			renderQuad(texture.getTextureID(), texture.getMinU(), texture.getMinV(), texture.getMaxU(), texture.getMaxV(), minX, minY, maxX, maxY);
+	}
+	
+	private void renderQuad(int textureID, float minU, float minV, float maxU, float maxV, float minX, float minY, float maxX, float maxY) {
 		if (minX <= 1 && minY <= 1 && maxX >= 0 && maxY >= 0) {
 			// Don't waste time rendering things that are completely off the screen
 			GL13.glActiveTexture(GL13.GL_TEXTURE0);
-			GUI_SHADER.loadPosition(minX * 2 - 1, minY * 2 - 1);
-			GUI_SHADER.loadSize(2 * (maxX - minX), 2 * (maxY - minY));
-			GUI_SHADER.loadBounds(texture.getMinU(), texture.getMinV(), texture.getMaxU(), texture.getMaxV());
-			GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureID());
+			shader.loadPosition(minX * 2 - 1, minY * 2 - 1);
+			shader.loadSize(2 * (maxX - minX), 2 * (maxY - minY));
+			shader.loadBounds(minU, minV, maxU, maxV);
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
 			GL11.glDrawArrays(GL11.GL_TRIANGLE_STRIP, 0, 4);
 		}
 	}
 
+	/**
+	 * Renders only the tiles of the tiled texture that are visible. The tiles that are not yet resident will be
+	 * uploaded by the tile cache.
+	 */
+	private void renderTiled(TiledGuiTexture texture, float minX, float minY, float maxX, float maxY) {
+		if (texture.computeVisibleTiles(minX, minY, maxX, maxY, visibleTiles)) {
+			int tileSize = texture.getTileSize();
+			float scaleX = (maxX - minX) / texture.getWidth();
+			float scaleY = (maxY - minY) / texture.getHeight();
+			for (int tileY = visibleTiles[1]; tileY < visibleTiles[3]; tileY++) {
+				int pixelMinY = tileY * tileSize;
+				int pixelMaxY = Math.min(pixelMinY + tileSize, texture.getHeight());
+				for (int tileX = visibleTiles[0]; tileX < visibleTiles[2]; tileX++) {
+					int pixelMinX = tileX * tileSize;
+					int pixelMaxX = Math.min(pixelMinX + tileSize, texture.getWidth());
+					GuiTexture tile = texture.getTile(tileX, tileY);
+					renderQuad(tile.getTextureID(), tile.getMinU(), tile.getMinV(), tile.getMaxU(), tile.getMaxV(), 
+							minX + pixelMinX * scaleX, maxY - pixelMaxY * scaleY, minX + pixelMaxX * scaleX, maxY - pixelMinY * scaleY);
+				}
+			}
+		}
+	}
+
 	@Override
 	void fillNow(GuiColor color, float minX, float minY, float maxX, float maxY) {
-		renderTextureNow(getFilledTexture(color), minX, minY, maxX, maxY);
+		renderTextureNow(getFilledTexture(GLCommandBuffer.toARGB(color)), minX, minY, maxX, maxY);
 	}
 
 	@Override
 	void clearNow(GuiColor color) {
-		GL11.glClearColor(color.getRedF(), color.getGreenF(), color.getBlueF(), color.getAlphaF());
+		clearNow(GLCommandBuffer.toARGB(color));
+	}
+	
+	private void clearNow(int argb) {
+		GL11.glClearColor((argb >> 16 & 0xFF) / 255f, (argb >> 8 & 0xFF) / 255f, (argb & 0xFF) / 255f, (argb >>> 24) / 255f);
 		GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
 	}
 	
 	@Override
-	void renderNow(List<RenderCommand> renderCommands) {
+	protected void renderNow(GLCommandBuffer commands) {
+		GLGuiTextureLoader loader = window.getContext().getTextureLoader();
+		loader.updateDynamicTextures();
+		TextureVariantSelector variants = loader.getVariantSelector().isEmpty() ? null : loader.getVariantSelector();
+		boolean timing = metrics != null;
+		GLCharBuilder charBuilder = window.getContext().getCharBuilder();
+		cleanRetiredGpuTimer();
+		long frameStartTime = 0;
+		if (timing) {
+			frameStartTime = System.nanoTime();
+			if (gpuTiming) {
+				if (gpuTimer == null)
+					gpuTimer = new GpuTimer(GLQueryBackend.isSupported() ? new GLQueryBackend() : GpuTimer.NO_QUERIES, metrics);
+				gpuTimer.beginFrame();
+			}
+		}
 		start();
-		super.renderNow(renderCommands);
+		int size = commands.size();
+		for (int index = 0; index < size; index++) {
+			if (isCulled(index))
+				continue;
+			byte type = commands.getType(index);
+			if (timing) {
+				if (type == GLCommandBuffer.TYPE_TEXTURE)
+					beginPass(charBuilder.isGlyphTexture(commands.getID(index)) ? RenderPass.TEXT : RenderPass.TEXTURE);
+				else if (type == GLCommandBuffer.TYPE_FILL)
+					beginPass(RenderPass.FILL);
+				else
+					beginPass(RenderPass.CLEAR);
+			}
+			if (type == GLCommandBuffer.TYPE_TEXTURE && commands.getTexture(index) instanceof TiledGuiTexture) {
+				renderTiled((TiledGuiTexture) commands.getTexture(index), commands.getMinX(index), commands.getMinY(index), commands.getMaxX(index), commands.getMaxY(index));
+			} else if (type == GLCommandBuffer.TYPE_TEXTURE) {
+				if (variants != null) {
+					GuiTexture texture = commands.getTexture(index);
+					variants.recordDraw(texture.getTextureID(), texture.getWidth(), (commands.getMaxX(index) - commands.getMinX(index)) * viewportWidth);
+					variants.recordDraw(texture.getTextureID(), texture.getHeight(), (commands.getMaxY(index) - commands.getMinY(index)) * viewportHeight);
+				}
+				renderQuad(commands.getID(index), commands.getMinU(index), commands.getMinV(index), commands.getMaxU(index), commands.getMaxV(index), 
+						commands.getMinX(index), commands.getMinY(index), commands.getMaxX(index), commands.getMaxY(index));
+			} else if (type == GLCommandBuffer.TYPE_FILL) {
+				GuiTexture texture = getFilledTexture(commands.getID(index));
+				renderQuad(texture.getTextureID(), texture.getMinU(), texture.getMinV(), texture.getMaxU(), texture.getMaxV(), 
+						commands.getMinX(index), commands.getMinY(index), commands.getMaxX(index), commands.getMaxY(index));
+			} else {
+				clearNow(commands.getID(index));
+			}
+		}
 		stop();
-		GLFW.glfwSwapBuffers(window.getWindowID());
+		if (timing) {
+			if (gpuTimer != null)
+				gpuTimer.endFrame();
+			long swapStartTime = System.nanoTime();
+			if (cpuPass != null)
+				cpuPassTimes[cpuPass.ordinal()] += swapStartTime - passStartTime;
+			cpuPass = null;
+			RenderPass[] passes = RenderPass.values();
+			for (int index = 0; index < passes.length; index++) {
+				metrics.record(passes[index].getCpuMetric(), cpuPassTimes[index]);
+				cpuPassTimes[index] = 0;
+			}
+			GLFW.glfwSwapBuffers(window.getWindowID());
+			swapCount++;
+			long endTime = System.nanoTime();
+			metrics.record("cpu.swap", endTime - swapStartTime);
+			metrics.record("cpu.frame", endTime - frameStartTime);
+		} else {
+			GLFW.glfwSwapBuffers(window.getWindowID());
+			swapCount++;
+		}
 	}
 	
-	private GuiTexture getFilledTexture(GuiColor color){
-		GuiTexture texture = colorMap.get(color);
-		if(texture == null){
-			BufferedImage image = new BufferedImage(1, 1, color.getAlphaF() == 1 ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
-			image.setRGB(0, 0, new Color(color.getRedF(), color.getGreenF(), color.getBlueF(), color.getAlphaF()).getRGB());
-			texture = textureLoader.loadTexture(image);
-			colorMap.put(color, texture);
-		}
-		return texture;
+	private GuiTexture getFilledTexture(int argb){
+		return window.getContext().getFilledTexture(argb);
 	}
 }
\ No newline at end of file
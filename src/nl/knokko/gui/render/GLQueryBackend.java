@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLCapabilities;
+
+/**
+ * The QueryBackend that uses GL_TIME_ELAPSED queries. These require OpenGL 3.3 or ARB_timer_query, see
+ * isSupported().
+ * @author knokko
+ *
+ */
+public class GLQueryBackend implements GpuTimer.QueryBackend {
+	
+	/**
+	 * @return true if the current OpenGL context supports timer queries
+	 */
+	public static boolean isSupported() {
+		GLCapabilities capabilities = GL.getCapabilities();
+		return capabilities.OpenGL33 || capabilities.GL_ARB_timer_query;
+	}
+
+	@Override
+	public int createQuery() {
+		return GL15.glGenQueries();
+	}
+
+	@Override
+	public void begin(int query) {
+		GL15.glBeginQuery(GL33.GL_TIME_ELAPSED, query);
+	}
+
+	@Override
+	public void end() {
+		GL15.glEndQuery(GL33.GL_TIME_ELAPSED);
+	}
+
+	@Override
+	public boolean isAvailable(int query) {
+		return GL15.glGetQueryObjecti(query, GL15.GL_QUERY_RESULT_AVAILABLE) != GL11.GL_FALSE;
+	}
+
+	@Override
+	public long getResult(int query) {
+		return GL33.glGetQueryObjecti64(query, GL15.GL_QUERY_RESULT);
+	}
+
+	@Override
+	public void deleteQuery(int query) {
+		GL15.glDeleteQueries(query);
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+/**
+ * Measures how much GPU time the render passes take with timer queries. Every time the renderer switches to
+ * another pass, the current query is ended and a new query is started. The queries of a frame are only read
+ * back when the frame comes around again in the ring of frames, which is several frames later. If the results
+ * are not available at that point, the frame is dropped instead of waiting for the GPU.
+ * 
+ * The queries themselves are done by a QueryBackend, so this class can also be used without OpenGL.
+ * @author knokko
+ *
+ */
+public class GpuTimer {
+	
+	public static final int DEFAULT_FRAMES_IN_FLIGHT = 4;
+	
+	/**
+	 * A backend that doesn't measure anything, but makes all results available immediately with a duration
+	 * of 0. This can be used when timer queries are not supported.
+	 */
+	public static final QueryBackend NO_QUERIES = new QueryBackend() {
+		
+		private int nextQuery = 1;
+
+		@Override
+		public int createQuery() {
+			return nextQuery++;
+		}
+
+		@Override
+		public void begin(int query) {}
+
+		@Override
+		public void end() {}
+
+		@Override
+		public boolean isAvailable(int query) {
+			return true;
+		}
+
+		@Override
+		public long getResult(int query) {
+			return 0;
+		}
+
+		@Override
+		public void deleteQuery(int query) {}
+	};
+	
+	private final QueryBackend backend;
+	private final FrameMetrics metrics;
+	private final Frame[] frames;
+	private final long[] passTimes;
+	
+	private Frame currentFrame;
+	private int frameIndex;
+	private RenderPass currentPass;
+	
+	private long publishedFrames;
+	private long droppedFrames;
+	
+	/**
+	 * @param backend The backend that does the actual queries
+	 * @param metrics The metrics that will receive the measured GPU times
+	 * @param framesInFlight The number of frames that can be measured before the results of the first one are
+	 * read back
+	 */
+	public GpuTimer(QueryBackend backend, FrameMetrics metrics, int framesInFlight) {
+		this.backend = backend;
+		this.metrics = metrics;
+		this.frames = new Frame[framesInFlight];
+		for (int index = 0; index < framesInFlight; index++)
+			frames[index] = new Frame();
+		this.passTimes = new long[RenderPass.values().length];
+	}
+	
+	public GpuTimer(QueryBackend backend, FrameMetrics metrics) {
+		this(backend, metrics, DEFAULT_FRAMES_IN_FLIGHT);
+	}
+	
+	/**
+	 * Starts measuring a new frame. The results of the frame that used the same slot in the ring are published
+	 * if they are available, and dropped otherwise.
+	 */
+	public void beginFrame() {
+		currentFrame = frames[frameIndex];
+		frameIndex = (frameIndex + 1) % frames.length;
+		if (currentFrame.size > 0) {
+			if (backend.isAvailable(currentFrame.queries[currentFrame.size - 1]))
+				publish(currentFrame);
+			else
+				droppedFrames++;
+			currentFrame.size = 0;
+		}
+		currentPass = null;
+	}
+	
+	/**
+	 * Ends the query of the current pass if it is not the given pass and starts a query for the given pass
+	 */
+	public void beginPass(RenderPass pass) {
+		if (pass != currentPass) {
+			if (currentPass != null)
+				backend.end();
+			currentPass = pass;
+			backend.begin(currentFrame.nextQuery(backend, pass));
+		}
+	}
+	
+	/**
+	 * Ends the query of the current pass. This should be called before the buffers are swapped.
+	 */
+	public void endFrame() {
+		if (currentPass != null) {
+			backend.end();
+			currentPass = null;
+		}
+	}
+	
+	private void publish(Frame frame) {
+		long total = 0;
+		for (int index = 0; index < frame.size; index++) {
+			long time = backend.getResult(frame.queries[index]);
+			passTimes[frame.passes[index]] += time;
+			total += time;
+		}
+		RenderPass[] passes = RenderPass.values();
+		for (int index = 0; index < passes.length; index++) {
+			metrics.record(passes[index].getGpuMetric(), passTimes[index]);
+			passTimes[index] = 0;
+		}
+		metrics.record("gpu.frame", total);
+		publishedFrames++;
+	}
+	
+	/**
+	 * Deletes all queries. This timer should not be used anymore after this call.
+	 */
+	public void clean() {
+		endFrame();
+		for (Frame frame : frames) {
+			for (int index = 0; index < frame.queries.length; index++)
+				if (frame.queries[index] != 0)
+					backend.deleteQuery(frame.queries[index]);
+			frame.size = 0;
+		}
+	}
+	
+	/**
+	 * @return The number of frames whose GPU times have been published
+	 */
+	public long getPublishedFrames() {
+		return publishedFrames;
+	}
+	
+	/**
+	 * @return The number of frames whose GPU times were not available in time and have been dropped
+	 */
+	public long getDroppedFrames() {
+		return droppedFrames;
+	}
+	
+	private static class Frame {
+		
+		private int[] queries = new int[8];
+		private byte[] passes = new byte[8];
+		private int size;
+		
+		private int nextQuery(QueryBackend backend, RenderPass pass) {
+			if (size == queries.length) {
+				int[] newQueries = new int[2 * size];
+				System.arraycopy(queries, 0, newQueries, 0, size);
+				queries = newQueries;
+				byte[] newPasses = new byte[2 * size];
+				System.arraycopy(passes, 0, newPasses, 0, size);
+				passes = newPasses;
+			}
+			
+			// The query objects are kept for the next time this frame slot is used
+			if (queries[size] == 0)
+				queries[size] = backend.createQuery();
+			passes[size] = (byte) pass.ordinal();
+			return queries[size++];
+		}
+	}
+	
+	public static interface QueryBackend {
+		
+		/**
+		 * @return The id of a new query object, which must not be 0
+		 */
+		int createQuery();
+		
+		/**
+		 * Starts measuring the elapsed GPU time with the given query
+		 */
+		void begin(int query);
+		
+		/**
+		 * Stops measuring with the query that was started last
+		 */
+		void end();
+		
+		/**
+		 * @return true if the result of the given query can be read without waiting
+		 */
+		boolean isAvailable(int query);
+		
+		/**
+		 * @return The elapsed time that was measured by the given query in nanoseconds
+		 */
+		long getResult(int query);
+		
+		void deleteQuery(int query);
+	}
+}
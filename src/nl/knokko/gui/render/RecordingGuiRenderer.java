@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import java.util.ArrayList;
+
+import nl.knokko.gui.color.GuiColor;
+import nl.knokko.gui.texture.GuiTexture;
+
+/**
+ * A GuiRenderer that only records its commands into a GLCommandBuffer. It doesn't render anything itself: the
+ * recorded commands can be appended to a CommandRecorder later. Every thread that records commands in parallel
+ * should use its own RecordingGuiRenderer.
+ * @author knokko
+ *
+ */
+public class RecordingGuiRenderer extends GuiRenderer implements CommandRecorder {
+	
+	GLCommandBuffer commands;
+	
+	int culledAreas;
+	
+	private final ArrayList<AreaGuiRenderer> areas;
+	private int usedAreas;
+	
+	public RecordingGuiRenderer() {
+		commands = new GLCommandBuffer();
+		areas = new ArrayList<AreaGuiRenderer>();
+	}
+	
+	@Override
+	public GuiRenderer getArea(float minX, float minY, float maxX, float maxY) {
+		return obtainArea(0, 0, 1, 1, 0, 0, 1, 1, minX, minY, maxX, maxY);
+	}
+	
+	/**
+	 * Takes the next unused area of this frame (or creates a new one if all areas are in use) and initializes it.
+	 */
+	AreaGuiRenderer obtainArea(float parentScreenMinX, float parentScreenMinY, float parentScreenDeltaX, float parentScreenDeltaY, 
+			float parentVisibleMinX, float parentVisibleMinY, float parentVisibleMaxX, float parentVisibleMaxY, 
+			float minX, float minY, float maxX, float maxY) {
+		AreaGuiRenderer area;
+		if (usedAreas < areas.size()) {
+			area = areas.get(usedAreas);
+		} else {
+			area = new AreaGuiRenderer(this);
+			areas.add(area);
+		}
+		usedAreas++;
+		area.set(parentScreenMinX, parentScreenMinY, parentScreenDeltaX, parentScreenDeltaY, 
+				parentVisibleMinX, parentVisibleMinY, parentVisibleMaxX, parentVisibleMaxY, minX, minY, maxX, maxY);
+		return area;
+	}
+	
+	@Override
+	public void renderTexture(GuiTexture texture, float minX, float minY, float maxX, float maxY) {
+		commands.addTexture(texture, minX, minY, maxX, maxY);
+	}
+	
+	@Override
+	public void fill(GuiColor color, float minX, float minY, float maxX, float maxY) {
+		commands.addFill(GLCommandBuffer.toARGB(color), minX, minY, maxX, maxY);
+	}
+	
+	@Override
+	public void clear(GuiColor color) {
+		commands.addClear(GLCommandBuffer.toARGB(color));
+	}
+	
+	@Override
+	public void appendCommands(RecordingGuiRenderer recorder) {
+		commands.append(recorder.commands);
+		culledAreas += recorder.culledAreas;
+		appendAreas(recorder, 0, 0, 1, 1, 0, 0, 1, 1);
+	}
+	
+	/**
+	 * Takes an area of this frame for every visible area the given recorder used, transformed by the given parent
+	 * transform, so the spatial index also contains the areas of recorders whose commands were appended.
+	 */
+	void appendAreas(RecordingGuiRenderer recorder, float parentScreenMinX, float parentScreenMinY, float parentScreenDeltaX, 
+			float parentScreenDeltaY, float parentVisibleMinX, float parentVisibleMinY, float parentVisibleMaxX, float parentVisibleMaxY) {
+		for (int index = 0; index < recorder.usedAreas; index++) {
+			AreaGuiRenderer area = recorder.areas.get(index);
+			if (area.isVisible()) {
+				obtainArea(parentScreenMinX, parentScreenMinY, parentScreenDeltaX, parentScreenDeltaY, 
+						parentVisibleMinX, parentVisibleMinY, parentVisibleMaxX, parentVisibleMaxY, 
+						area.visibleMinX, area.visibleMinY, area.visibleMaxX, area.visibleMaxY);
+			}
+		}
+	}
+	
+	/**
+	 * A RecordingGuiRenderer keeps its commands until clearCommands is called, so this method doesn't do
+	 * anything.
+	 */
+	@Override
+	public void maybeRenderNow() {}
+	
+	/**
+	 * Puts the visible areas that were used since the last clearCommands in the given index.
+	 */
+	void buildIndex(SpatialIndex index) {
+		index.build(areas, usedAreas);
+	}
+	
+	/**
+	 * Removes all recorded commands, so this renderer can be used to record the next frame. The areas that
+	 * were returned by getArea will be reused.
+	 */
+	public void clearCommands() {
+		commands.clear();
+		culledAreas = 0;
+		usedAreas = 0;
+	}
+	
+	/**
+	 * @return The number of AreaGuiRenderers this renderer has created, which is the largest number of areas
+	 * that was used during a single frame
+	 */
+	public int getAreaPoolSize() {
+		return areas.size();
+	}
+	
+	/**
+	 * @return The commands that have been recorded since the last clearCommands
+	 */
+	public GLCommandBuffer getCommands() {
+		return commands;
+	}
+	
+	void onCulledArea() {
+		culledAreas++;
+	}
+}
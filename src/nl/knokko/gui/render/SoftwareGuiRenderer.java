@@ -0,0 +1,342 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import nl.knokko.gui.texture.loader.SoftwareTextureLoader;
+
+/**
+ * A parent renderer that rasterizes the frames on the cpu instead of using OpenGL, so it can be used on machines
+ * without gpu (to render thumbnails or in tests). It samples the textures the same way as the vertex and fragment
+ * shader of the GLGuiRenderer do (bilinear and clamped to the edges) and it uses the same alpha blending.
+ * 
+ * The framebuffer is divided into tiles of TILE_SIZE x TILE_SIZE pixels that are rasterized in parallel on a
+ * ForkJoinPool. The textures should be loaded with a SoftwareTextureLoader.
+ * @author knokko
+ *
+ */
+public class SoftwareGuiRenderer extends CommandGuiRenderer {
+	
+	public static final int TILE_SIZE = 64;
+	
+	private static int clamp(int value, int max) {
+		if (value < 0)
+			return 0;
+		if (value > max)
+			return max;
+		return value;
+	}
+	
+	private static int lerp(int left, int right, int weight) {
+		return (left * (256 - weight) + right * weight) >> 8;
+	}
+	
+	private final SoftwareTextureLoader textureLoader;
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+	
+	private final int width;
+	private final int height;
+	private final int tilesX;
+	private final int tilesY;
+	private final int[] framebuffer;
+	
+	private GLCommandBuffer commands;
+	private int[] pixelBounds;
+	private int[][] texturePixels;
+	private int[] textureSizes;
+	
+	private long renderedFrames;
+	
+	/**
+	 * Creates a software renderer that uses the common ForkJoinPool
+	 * @param width The width of the framebuffer in pixels
+	 * @param height The height of the framebuffer in pixels
+	 * @param textureLoader The loader that created all textures that will be rendered
+	 */
+	public SoftwareGuiRenderer(int width, int height, SoftwareTextureLoader textureLoader) {
+		this(width, height, textureLoader, ForkJoinPool.commonPool(), false);
+	}
+	
+	/**
+	 * Creates a software renderer with its own ForkJoinPool. The pool will be shut down when clean() is called.
+	 * @param width The width of the framebuffer in pixels
+	 * @param height The height of the framebuffer in pixels
+	 * @param textureLoader The loader that created all textures that will be rendered
+	 * @param parallelism The number of threads that will rasterize the tiles
+	 */
+	public SoftwareGuiRenderer(int width, int height, SoftwareTextureLoader textureLoader, int parallelism) {
+		this(width, height, textureLoader, new ForkJoinPool(parallelism), true);
+	}
+	
+	private SoftwareGuiRenderer(int width, int height, SoftwareTextureLoader textureLoader, ForkJoinPool pool, boolean ownsPool) {
+		super(textureLoader::isOpaque);
+		this.width = width;
+		this.height = height;
+		this.textureLoader = textureLoader;
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		framebuffer = new int[width * height];
+		pixelBounds = new int[4 * 200];
+		texturePixels = new int[200][];
+		textureSizes = new int[2 * 200];
+	}
+	
+	@Override
+	protected void renderNow(GLCommandBuffer commands) {
+		this.commands = commands;
+		prepare();
+		pool.invoke(new TileTask(0, tilesX * tilesY));
+		
+		// Don't keep the texture pixels alive until the next frame
+		for (int index = 0; index < commands.size(); index++)
+			texturePixels[index] = null;
+		this.commands = null;
+		renderedFrames++;
+	}
+	
+	/**
+	 * Computes the pixel bounds of every command and looks up the pixels of the textures, so that the tile tasks
+	 * don't need to do that for every tile.
+	 */
+	private void prepare() {
+		int size = commands.size();
+		if (texturePixels.length < size) {
+			int newCapacity = Math.max(size, 2 * texturePixels.length);
+			pixelBounds = new int[4 * newCapacity];
+			texturePixels = new int[newCapacity][];
+			textureSizes = new int[2 * newCapacity];
+		}
+		for (int index = 0; index < size; index++) {
+			int offset = 4 * index;
+			byte type = commands.getType(index);
+			if (isCulled(index)) {
+				pixelBounds[offset] = 0;
+				pixelBounds[offset + 2] = 0;
+			} else if (type == GLCommandBuffer.TYPE_CLEAR) {
+				pixelBounds[offset] = 0;
+				pixelBounds[offset + 1] = 0;
+				pixelBounds[offset + 2] = width;
+				pixelBounds[offset + 3] = height;
+			} else {
+				
+				// A pixel is covered when its center is inside the quad, just like OpenGL does
+				float minX = Math.min(commands.getMinX(index), commands.getMaxX(index));
+				float minY = Math.min(commands.getMinY(index), commands.getMaxY(index));
+				float maxX = Math.max(commands.getMinX(index), commands.getMaxX(index));
+				float maxY = Math.max(commands.getMinY(index), commands.getMaxY(index));
+				pixelBounds[offset] = clamp((int) Math.ceil(minX * width - 0.5f), width);
+				pixelBounds[offset + 2] = clamp((int) Math.ceil(maxX * width - 0.5f), width);
+				
+				// The y-axis of the screen points upwards, but the rows of the framebuffer are stored from top to bottom
+				pixelBounds[offset + 1] = clamp(height - (int) Math.ceil(maxY * height - 0.5f), height);
+				pixelBounds[offset + 3] = clamp(height - (int) Math.ceil(minY * height - 0.5f), height);
+				
+				if (type == GLCommandBuffer.TYPE_TEXTURE) {
+					int textureID = commands.getID(index);
+					if (textureID > 0) {
+						texturePixels[index] = textureLoader.getPixels(textureID);
+						textureSizes[2 * index] = textureLoader.getWidth(textureID);
+						textureSizes[2 * index + 1] = textureLoader.getHeight(textureID);
+					} else {
+						pixelBounds[offset + 2] = pixelBounds[offset];
+					}
+				}
+			}
+		}
+	}
+	
+	private void rasterizeTile(int tileX, int tileY) {
+		int tileMinX = tileX * TILE_SIZE;
+		int tileMinY = tileY * TILE_SIZE;
+		int tileMaxX = Math.min(tileMinX + TILE_SIZE, width);
+		int tileMaxY = Math.min(tileMinY + TILE_SIZE, height);
+		int size = commands.size();
+		for (int index = 0; index < size; index++) {
+			int offset = 4 * index;
+			int minX = Math.max(tileMinX, pixelBounds[offset]);
+			int minY = Math.max(tileMinY, pixelBounds[offset + 1]);
+			int maxX = Math.min(tileMaxX, pixelBounds[offset + 2]);
+			int maxY = Math.min(tileMaxY, pixelBounds[offset + 3]);
+			if (minX >= maxX || minY >= maxY)
+				continue;
+			byte type = commands.getType(index);
+			if (type == GLCommandBuffer.TYPE_CLEAR) {
+				int argb = commands.getID(index);
+				for (int y = minY; y < maxY; y++)
+					for (int x = minX; x < maxX; x++)
+						framebuffer[x + y * width] = argb;
+			} else if (type == GLCommandBuffer.TYPE_FILL) {
+				int argb = commands.getID(index);
+				for (int y = minY; y < maxY; y++)
+					for (int x = minX; x < maxX; x++)
+						blend(x + y * width, argb);
+			} else {
+				rasterizeTexture(index, minX, minY, maxX, maxY);
+			}
+		}
+	}
+	
+	private void rasterizeTexture(int index, int minX, int minY, int maxX, int maxY) {
+		int[] pixels = texturePixels[index];
+		int textureWidth = textureSizes[2 * index];
+		int textureHeight = textureSizes[2 * index + 1];
+		
+		// These are the same formulas as in the vertex shader, but expressed in framebuffer pixels
+		float minU = commands.getMinU(index);
+		float maxU = commands.getMaxU(index);
+		float minV = commands.getMinV(index);
+		float maxV = commands.getMaxV(index);
+		float quadMinX = commands.getMinX(index);
+		float quadMinY = commands.getMinY(index);
+		float scaleU = (maxU - minU) / (commands.getMaxX(index) - quadMinX);
+		float scaleV = (maxV - minV) / (commands.getMaxY(index) - quadMinY);
+		
+		for (int y = minY; y < maxY; y++) {
+			float screenY = (height - y - 0.5f) / height;
+			float v = maxV - (screenY - quadMinY) * scaleV;
+			float texelY = v * textureHeight - 0.5f;
+			int texelY0 = (int) Math.floor(texelY);
+			int weightY = (int) ((texelY - texelY0) * 256);
+			int row0 = clamp(texelY0, textureHeight - 1) * textureWidth;
+			int row1 = clamp(texelY0 + 1, textureHeight - 1) * textureWidth;
+			for (int x = minX; x < maxX; x++) {
+				float screenX = (x + 0.5f) / width;
+				float u = minU + (screenX - quadMinX) * scaleU;
+				float texelX = u * textureWidth - 0.5f;
+				int texelX0 = (int) Math.floor(texelX);
+				int weightX = (int) ((texelX - texelX0) * 256);
+				int column0 = clamp(texelX0, textureWidth - 1);
+				int column1 = clamp(texelX0 + 1, textureWidth - 1);
+				blend(x + y * width, sample(pixels[row0 + column0], pixels[row0 + column1], pixels[row1 + column0], pixels[row1 + column1], weightX, weightY));
+			}
+		}
+	}
+	
+	private static int sample(int topLeft, int topRight, int bottomLeft, int bottomRight, int weightX, int weightY) {
+		int result = 0;
+		for (int shift = 0; shift < 32; shift += 8) {
+			int top = lerp(topLeft >>> shift & 0xFF, topRight >>> shift & 0xFF, weightX);
+			int bottom = lerp(bottomLeft >>> shift & 0xFF, bottomRight >>> shift & 0xFF, weightX);
+			result |= lerp(top, bottom, weightY) << shift;
+		}
+		return result;
+	}
+	
+	/**
+	 * Blends the source color into the framebuffer like glBlendFunc(GL_SRC_ALPHA, GL_ONE_MINUS_SRC_ALPHA) does
+	 */
+	private void blend(int pixelIndex, int source) {
+		int alpha = source >>> 24;
+		if (alpha == 255) {
+			framebuffer[pixelIndex] = source;
+		} else if (alpha != 0) {
+			int dest = framebuffer[pixelIndex];
+			int inverse = 255 - alpha;
+			int result = ((alpha * alpha + (dest >>> 24) * inverse + 127) / 255) << 24;
+			for (int shift = 0; shift < 24; shift += 8)
+				result |= (((source >>> shift & 0xFF) * alpha + (dest >>> shift & 0xFF) * inverse + 127) / 255) << shift;
+			framebuffer[pixelIndex] = result;
+		}
+	}
+	
+	/**
+	 * @return The ARGB pixels of the framebuffer, row by row, starting with the upper row
+	 */
+	public int[] getFramebuffer() {
+		return framebuffer;
+	}
+	
+	/**
+	 * @return A new image with a copy of the framebuffer
+	 */
+	public BufferedImage toImage() {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, width, height, framebuffer, 0, width);
+		return image;
+	}
+	
+	/**
+	 * Puts the framebuffer in the given buffer as RGBA bytes, starting with the upper row. The buffer must have
+	 * at least 4 * width * height bytes remaining.
+	 * @param destination The buffer to put the pixels in
+	 */
+	public void writeRGBA(ByteBuffer destination) {
+		for (int argb : framebuffer) {
+			destination.put((byte) (argb >> 16));
+			destination.put((byte) (argb >> 8));
+			destination.put((byte) argb);
+			destination.put((byte) (argb >> 24));
+		}
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public long getRenderedFrames() {
+		return renderedFrames;
+	}
+	
+	/**
+	 * Shuts down the ForkJoinPool of this renderer if it created its own pool.
+	 */
+	public void clean() {
+		if (ownsPool)
+			pool.shutdown();
+	}
+	
+	private class TileTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final int minTile;
+		private final int boundTile;
+		
+		TileTask(int minTile, int boundTile) {
+			this.minTile = minTile;
+			this.boundTile = boundTile;
+		}
+
+		@Override
+		protected void compute() {
+			if (boundTile - minTile == 1) {
+				rasterizeTile(minTile % tilesX, minTile / tilesX);
+			} else if (boundTile > minTile) {
+				int middle = (minTile + boundTile) / 2;
+				invokeAll(new TileTask(minTile, middle), new TileTask(middle, boundTile));
+			}
+		}
+	}
+}
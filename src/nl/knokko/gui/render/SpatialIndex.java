@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A uniform grid over the screen that contains the visible rectangles of the areas of the last rendered frame.
+ * Since components are normally rendered in their own area, this can be used to find out which components are
+ * under the cursor without walking the component tree. Only the grid cells that contain the point need to be
+ * checked, so a query takes roughly constant time.
+ * 
+ * Areas are identified by the order in which they were created during the frame. Areas that were created later
+ * are rendered on top of the areas that were created earlier.
+ * @author knokko
+ *
+ */
+public class SpatialIndex {
+	
+	private static final long NO_AREA_KEY = 0xcbf29ce484222325L;
+	
+	private final int gridSize;
+	private final int[] cellStarts;
+	
+	private float[] bounds;
+	private int[] ids;
+	private int[] cellItems;
+	private int[] cellCursors;
+	private int size;
+	
+	private long builds;
+	private long queries;
+	
+	/**
+	 * @param gridSize The number of cells in each direction
+	 */
+	public SpatialIndex(int gridSize) {
+		this.gridSize = gridSize;
+		this.cellStarts = new int[gridSize * gridSize + 1];
+		this.cellCursors = new int[gridSize * gridSize];
+		this.bounds = new float[64];
+		this.ids = new int[16];
+		this.cellItems = new int[64];
+	}
+	
+	private int cell(float coordinate) {
+		int cell = (int) (coordinate * gridSize);
+		return cell < 0 ? 0 : cell >= gridSize ? gridSize - 1 : cell;
+	}
+	
+	/**
+	 * Replaces the content of this index with the visible areas of the given list.
+	 * @param areas The areas of the frame, in the order they were created
+	 * @param count The number of areas that were used during the frame
+	 */
+	void build(List<AreaGuiRenderer> areas, int count) {
+		size = 0;
+		for (int index = 0; index < count; index++) {
+			AreaGuiRenderer area = areas.get(index);
+			if (area.isVisible()) {
+				if (size == ids.length) {
+					ids = Arrays.copyOf(ids, 2 * size);
+					bounds = Arrays.copyOf(bounds, 8 * size);
+				}
+				ids[size] = index;
+				bounds[4 * size] = area.visibleMinX;
+				bounds[4 * size + 1] = area.visibleMinY;
+				bounds[4 * size + 2] = area.visibleMaxX;
+				bounds[4 * size + 3] = area.visibleMaxY;
+				size++;
+			}
+		}
+		
+		// Count the items per cell, then compute where the items of every cell start
+		Arrays.fill(cellStarts, 0);
+		for (int item = 0; item < size; item++)
+			for (int y = cell(bounds[4 * item + 1]); y <= cell(bounds[4 * item + 3]); y++)
+				for (int x = cell(bounds[4 * item]); x <= cell(bounds[4 * item + 2]); x++)
+					cellStarts[x + y * gridSize + 1]++;
+		for (int cell = 0; cell < gridSize * gridSize; cell++)
+			cellStarts[cell + 1] += cellStarts[cell];
+		if (cellItems.length < cellStarts[gridSize * gridSize])
+			cellItems = new int[2 * cellStarts[gridSize * gridSize]];
+		System.arraycopy(cellStarts, 0, cellCursors, 0, cellCursors.length);
+		for (int item = 0; item < size; item++)
+			for (int y = cell(bounds[4 * item + 1]); y <= cell(bounds[4 * item + 3]); y++)
+				for (int x = cell(bounds[4 * item]); x <= cell(bounds[4 * item + 2]); x++)
+					cellItems[cellCursors[x + y * gridSize]++] = item;
+		builds++;
+	}
+	
+	private boolean contains(int item, float x, float y) {
+		return x >= bounds[4 * item] && x <= bounds[4 * item + 2] && y >= bounds[4 * item + 1] && y <= bounds[4 * item + 3];
+	}
+	
+	/**
+	 * Finds the topmost area that contains the given point.
+	 * @return The index of the area in its frame, or -1 if no area contains the point
+	 */
+	public int hitTest(float x, float y) {
+		queries++;
+		if (!(x >= 0 && x <= 1 && y >= 0 && y <= 1))
+			return -1;
+		int cell = cell(x) + cell(y) * gridSize;
+		for (int index = cellStarts[cell + 1] - 1; index >= cellStarts[cell]; index--)
+			if (contains(cellItems[index], x, y))
+				return ids[cellItems[index]];
+		return -1;
+	}
+	
+	/**
+	 * Computes a key that identifies the set of areas that contain the given point. If the key of 2 points is
+	 * the same, the same areas (and thus probably the same components) are under both points.
+	 */
+	public long getHoverKey(float x, float y) {
+		queries++;
+		long key = NO_AREA_KEY;
+		if (!(x >= 0 && x <= 1 && y >= 0 && y <= 1))
+			return key;
+		int cell = cell(x) + cell(y) * gridSize;
+		for (int index = cellStarts[cell]; index < cellStarts[cell + 1]; index++) {
+			if (contains(cellItems[index], x, y)) {
+				key = (key ^ ids[cellItems[index]]) * 0x9E3779B97F4A7C15L;
+				key ^= key >>> 29;
+			}
+		}
+		return key;
+	}
+	
+	/**
+	 * @return The number of visible areas in this index
+	 */
+	public int size() {
+		return size;
+	}
+	
+	public long getBuilds() {
+		return builds;
+	}
+	
+	public long getQueries() {
+		return queries;
+	}
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.render;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A simple FrameMetrics implementation that keeps the number of samples, the total, the maximum and the last
+ * value of every metric.
+ * @author knokko
+ *
+ */
+public class TimingStatistics implements FrameMetrics {
+	
+	private final Map<String,Entry> entries = new TreeMap<String,Entry>();
+
+	@Override
+	public void record(String metric, long nanos) {
+		Entry entry = entries.get(metric);
+		if (entry == null) {
+			entry = new Entry();
+			entries.put(metric, entry);
+		}
+		entry.count++;
+		entry.total += nanos;
+		entry.last = nanos;
+		if (nanos > entry.max)
+			entry.max = nanos;
+	}
+	
+	public long getCount(String metric) {
+		Entry entry = entries.get(metric);
+		return entry == null ? 0 : entry.count;
+	}
+	
+	/**
+	 * @return The average of the recorded values of the given metric in nanoseconds, or 0 if it has no values
+	 */
+	public long getAverage(String metric) {
+		Entry entry = entries.get(metric);
+		return entry == null ? 0 : entry.total / entry.count;
+	}
+	
+	public long getMax(String metric) {
+		Entry entry = entries.get(metric);
+		return entry == null ? 0 : entry.max;
+	}
+	
+	public long getLast(String metric) {
+		Entry entry = entries.get(metric);
+		return entry == null ? 0 : entry.last;
+	}
+	
+	public void reset() {
+		entries.clear();
+	}
+	
+	/**
+	 * Prints the average, maximum and last value of every metric in microseconds
+	 * @param output The stream to print the report to
+	 */
+	public void printReport(PrintStream output) {
+		for (Map.Entry<String,Entry> entry : entries.entrySet()) {
+			Entry value = entry.getValue();
+			output.println(String.format("%-16s avg %8.1f us, max %8.1f us, last %8.1f us (%d samples)", entry.getKey(), 
+					value.total / 1000.0 / value.count, value.max / 1000.0, value.last / 1000.0, value.count));
+		}
+	}
+	
+	private static class Entry {
+		
+		private long count;
+		private long total;
+		private long max;
+		private long last;
+	}
+}
@@ -31,11 +31,22 @@ import java.net.URL;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
 
+/**
+ * The shader program that is used to render all quads. The program is created in the constructor, so an OpenGL
+ * context must be current at that time. Windows that share their context with each other can use the same
+ * GuiShader instance, which is managed by their GLGuiContext.
+ * @author knokko
+ *
+ */
 public class GuiShader {
 	
-	public static final GuiShader GUI_SHADER = new GuiShader();
-	
-	private static int loadShader(URL url, int type){
+	/**
+	 * Reads the source code of a shader. This doesn't need an OpenGL context, so it can be done on another
+	 * thread while the context is being created.
+	 * @param url The location of the shader source
+	 * @return the source code of the shader
+	 */
+	public static String readSource(URL url) {
         StringBuilder shaderSource = new StringBuilder();
         try {
             BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), "UTF-8"));
@@ -48,11 +59,23 @@ public class GuiShader {
             e.printStackTrace();
             System.exit(-1);
         }
+        return shaderSource.toString();
+	}
+	
+	public static String readVertexSource() {
+		return readSource(GuiShader.class.getClassLoader().getResource("nl/knokko/gui/shader/vertex.shader"));
+	}
+	
+	public static String readFragmentSource() {
+		return readSource(GuiShader.class.getClassLoader().getResource("nl/knokko/gui/shader/fragment.shader"));
+	}
+	
+	private static int loadShader(String shaderSource, String name, int type){
         int shaderID = GL20.glCreateShader(type);
         GL20.glShaderSource(shaderID, shaderSource);
         GL20.glCompileShader(shaderID);
         if(GL20.glGetShaderi(shaderID, GL20.GL_COMPILE_STATUS ) == GL11.GL_FALSE){
-        	System.out.println("Failed to load shader " + url + " (" + type + ")");
+        	System.out.println("Failed to load shader " + name + " (" + type + ")");
             System.out.println(GL20.glGetShaderInfoLog(shaderID, 500));
             System.err.println("Could not compile shader!");
             System.exit(-1);
@@ -69,9 +92,17 @@ public class GuiShader {
 	
 	private int locationUV;
 
-	private GuiShader() {
-		vertexShaderID = loadShader(GuiShader.class.getClassLoader().getResource("nl/knokko/gui/shader/vertex.shader"), GL20.GL_VERTEX_SHADER);
-		fragmentShaderID = loadShader(GuiShader.class.getClassLoader().getResource("nl/knokko/gui/shader/fragment.shader"), GL20.GL_FRAGMENT_SHADER);
+	public GuiShader() {
+		this(readVertexSource(), readFragmentSource());
+	}
+	
+	/**
+	 * Creates the shader program from source code that has already been read, see readVertexSource() and
+	 * readFragmentSource().
+	 */
+	public GuiShader(String vertexSource, String fragmentSource) {
+		vertexShaderID = loadShader(vertexSource, "vertex.shader", GL20.GL_VERTEX_SHADER);
+		fragmentShaderID = loadShader(fragmentSource, "fragment.shader", GL20.GL_FRAGMENT_SHADER);
 		programID = GL20.glCreateProgram();
 		GL20.glAttachShader(programID, vertexShaderID);
 		GL20.glAttachShader(programID, fragmentShaderID);
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture;
+
+/**
+ * A texture whose pixels can be changed after it has been loaded. The pixels are kept in an ARGB array (top row
+ * first) and the changed region is tracked as a single dirty rectangle. The GLGuiTextureLoader that created this
+ * texture uploads only the dirty rectangle the next time a frame is rendered.
+ * 
+ * Every change increments the version of this texture. Renderers use the version to find out that a frame needs
+ * to be rendered again even though the same textures are drawn at the same positions.
+ * @author knokko
+ *
+ */
+public class DynamicGuiTexture extends GLPartGuiTexture {
+	
+	private final int width;
+	private final int height;
+	private final int[] pixels;
+	
+	private int dirtyMinX;
+	private int dirtyMinY;
+	private int dirtyMaxX;
+	private int dirtyMaxY;
+	
+	private int version;
+
+	/**
+	 * @param textureID The id of the OpenGL texture, which must be at least width x height pixels large
+	 * @param width The width of this texture in pixels
+	 * @param height The height of this texture in pixels
+	 * @param textureWidth The width of the OpenGL texture in pixels
+	 * @param textureHeight The height of the OpenGL texture in pixels
+	 */
+	public DynamicGuiTexture(int textureID, int width, int height, int textureWidth, int textureHeight) {
+		super(textureID, 0, 0, (float) width / textureWidth, (float) height / textureHeight, textureWidth, textureHeight);
+		this.width = width;
+		this.height = height;
+		this.pixels = new int[width * height];
+		markDirty(0, 0, width, height);
+	}
+	
+	public int getRGB(int x, int y) {
+		return pixels[x + y * width];
+	}
+	
+	public void setRGB(int x, int y, int argb) {
+		pixels[x + y * width] = argb;
+		markDirty(x, y, 1, 1);
+	}
+	
+	/**
+	 * Copies a rectangle of ARGB values into this texture, like BufferedImage.setRGB does.
+	 */
+	public void setRGB(int minX, int minY, int width, int height, int[] argb, int offset, int scansize) {
+		for (int y = 0; y < height; y++)
+			System.arraycopy(argb, offset + y * scansize, pixels, minX + (minY + y) * this.width, width);
+		markDirty(minX, minY, width, height);
+	}
+	
+	/**
+	 * Fills a rectangle of this texture with a single ARGB value.
+	 */
+	public void fill(int minX, int minY, int width, int height, int argb) {
+		for (int y = minY; y < minY + height; y++) {
+			int offset = y * this.width;
+			for (int x = minX; x < minX + width; x++)
+				pixels[offset + x] = argb;
+		}
+		markDirty(minX, minY, width, height);
+	}
+	
+	/**
+	 * Gets the ARGB array of this texture. The array can be modified directly, but markDirty must be called
+	 * for the modified region afterwards.
+	 * @return The pixels of this texture, row by row and starting at the top row
+	 */
+	public int[] getPixels() {
+		return pixels;
+	}
+	
+	/**
+	 * Marks the given rectangle as changed, so it will be uploaded before the next frame is rendered.
+	 */
+	public void markDirty(int minX, int minY, int width, int height) {
+		if (isDirty()) {
+			dirtyMinX = Math.min(dirtyMinX, minX);
+			dirtyMinY = Math.min(dirtyMinY, minY);
+			dirtyMaxX = Math.max(dirtyMaxX, minX + width);
+			dirtyMaxY = Math.max(dirtyMaxY, minY + height);
+		} else {
+			dirtyMinX = minX;
+			dirtyMinY = minY;
+			dirtyMaxX = minX + width;
+			dirtyMaxY = minY + height;
+		}
+		version++;
+	}
+	
+	public boolean isDirty() {
+		return dirtyMaxX > dirtyMinX && dirtyMaxY > dirtyMinY;
+	}
+	
+	/**
+	 * Should be called by the texture loader after it has uploaded the dirty rectangle.
+	 */
+	public void clearDirty() {
+		dirtyMinX = 0;
+		dirtyMinY = 0;
+		dirtyMaxX = 0;
+		dirtyMaxY = 0;
+	}
+	
+	public int getDirtyMinX() {
+		return dirtyMinX;
+	}
+	
+	public int getDirtyMinY() {
+		return dirtyMinY;
+	}
+	
+	/**
+	 * @return The exclusive maximum x-coordinate of the dirty rectangle
+	 */
+	public int getDirtyMaxX() {
+		return dirtyMaxX;
+	}
+	
+	/**
+	 * @return The exclusive maximum y-coordinate of the dirty rectangle
+	 */
+	public int getDirtyMaxY() {
+		return dirtyMaxY;
+	}
+	
+	/**
+	 * @return A number that is incremented every time this texture is changed
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * @return The width of the OpenGL texture, which can be larger than the width of this texture
+	 */
+	public int getTextureWidth() {
+		return imageWidth;
+	}
+	
+	/**
+	 * @return The height of the OpenGL texture, which can be larger than the height of this texture
+	 */
+	public int getTextureHeight() {
+		return imageHeight;
+	}
+	
+	@Override
+	public int getWidth() {
+		return width;
+	}
+	
+	@Override
+	public int getHeight() {
+		return height;
+	}
+}
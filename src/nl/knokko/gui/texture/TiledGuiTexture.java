@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture;
+
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.knokko.gui.texture.loader.TileCache;
+
+/**
+ * A texture for images that are too large to be uploaded as a single OpenGL texture. The image is divided into
+ * square tiles that are uploaded lazily by a TileCache when they become visible, and that can be evicted again
+ * when they have not been visible for a while.
+ * 
+ * Unlike other textures, a TiledGuiTexture doesn't have a texture id. Renderers need to render the visible tiles
+ * instead, see computeVisibleTiles and getTile.
+ * @author knokko
+ *
+ */
+public class TiledGuiTexture implements GuiTexture {
+	
+	private static final AtomicInteger NEXT_SERIAL = new AtomicInteger();
+	
+	/**
+	 * Computes which tiles of a tiled image are visible when the image is rendered at the given location. The
+	 * screen coordinates are the same as for GuiRenderer.renderTexture, so only the part between 0 and 1 is
+	 * visible.
+	 * @param imageWidth The width of the image in pixels
+	 * @param imageHeight The height of the image in pixels
+	 * @param tileSize The width and height of every tile in pixels
+	 * @param minX The x-coordinate of the left side of the image on the screen
+	 * @param minY The y-coordinate of the bottom side of the image on the screen
+	 * @param maxX The x-coordinate of the right side of the image on the screen
+	 * @param maxY The y-coordinate of the top side of the image on the screen
+	 * @param result An array of length 4 that will be filled with the minimum tile x, minimum tile y, bound
+	 * tile x and bound tile y. The bounds are exclusive and the tile y is counted from the top of the image.
+	 * @return false if no tile is visible, true otherwise
+	 */
+	public static boolean computeVisibleTiles(int imageWidth, int imageHeight, int tileSize, 
+			float minX, float minY, float maxX, float maxY, int[] result) {
+		float visibleMinX = Math.max(0, Math.min(minX, maxX));
+		float visibleMinY = Math.max(0, Math.min(minY, maxY));
+		float visibleMaxX = Math.min(1, Math.max(minX, maxX));
+		float visibleMaxY = Math.min(1, Math.max(minY, maxY));
+		if (visibleMinX >= visibleMaxX || visibleMinY >= visibleMaxY)
+			return false;
+		
+		// Convert the visible part of the screen to texture coordinates, the v-axis points downwards
+		float u1 = (visibleMinX - minX) / (maxX - minX);
+		float u2 = (visibleMaxX - minX) / (maxX - minX);
+		float v1 = (maxY - visibleMaxY) / (maxY - minY);
+		float v2 = (maxY - visibleMinY) / (maxY - minY);
+		int tilesX = (imageWidth + tileSize - 1) / tileSize;
+		int tilesY = (imageHeight + tileSize - 1) / tileSize;
+		result[0] = Math.max(0, (int) Math.floor(Math.min(u1, u2) * imageWidth / tileSize));
+		result[1] = Math.max(0, (int) Math.floor(Math.min(v1, v2) * imageHeight / tileSize));
+		result[2] = Math.min(tilesX, (int) Math.ceil(Math.max(u1, u2) * imageWidth / tileSize));
+		result[3] = Math.min(tilesY, (int) Math.ceil(Math.max(v1, v2) * imageHeight / tileSize));
+		return result[0] < result[2] && result[1] < result[3];
+	}
+	
+	private final BufferedImage source;
+	private final int tileSize;
+	private final TileCache cache;
+	private final int serial;
+	
+	/**
+	 * @param source The large image
+	 * @param tileSize The width and height of the tiles, must be a power of 2
+	 * @param cache The cache that will upload the tiles
+	 */
+	public TiledGuiTexture(BufferedImage source, int tileSize, TileCache cache) {
+		if (Integer.bitCount(tileSize) != 1)
+			throw new IllegalArgumentException("The tile size must be a power of 2, but is " + tileSize);
+		this.source = source;
+		this.tileSize = tileSize;
+		this.cache = cache;
+		this.serial = NEXT_SERIAL.getAndIncrement();
+	}
+	
+	/**
+	 * @see TiledGuiTexture#computeVisibleTiles(int, int, int, float, float, float, float, int[])
+	 */
+	public boolean computeVisibleTiles(float minX, float minY, float maxX, float maxY, int[] result) {
+		return computeVisibleTiles(source.getWidth(), source.getHeight(), tileSize, minX, minY, maxX, maxY, result);
+	}
+	
+	/**
+	 * Gets the texture of the given tile. If the tile is not yet resident, it will be uploaded, so this method
+	 * should only be called when the OpenGL context is current.
+	 * @param tileX The x-coordinate of the tile
+	 * @param tileY The y-coordinate of the tile, counted from the top of the image
+	 * @return The texture of the tile
+	 */
+	public GuiTexture getTile(int tileX, int tileY) {
+		return cache.getTile(this, tileX, tileY);
+	}
+	
+	public BufferedImage getSource() {
+		return source;
+	}
+	
+	public int getTileSize() {
+		return tileSize;
+	}
+	
+	public int getTilesX() {
+		return (source.getWidth() + tileSize - 1) / tileSize;
+	}
+	
+	public int getTilesY() {
+		return (source.getHeight() + tileSize - 1) / tileSize;
+	}
+	
+	/**
+	 * @return A number that is unique for every TiledGuiTexture, which is used by the TileCache
+	 */
+	public int getSerial() {
+		return serial;
+	}
+
+	/**
+	 * A tiled texture doesn't have a single texture id, so this method always returns 0.
+	 */
+	@Override
+	public int getTextureID() {
+		return 0;
+	}
+
+	@Override
+	public float getMinU() {
+		return 0;
+	}
+
+	@Override
+	public float getMinV() {
+		return 0;
+	}
+
+	@Override
+	public float getMaxU() {
+		return 1;
+	}
+
+	@Override
+	public float getMaxV() {
+		return 1;
+	}
+
+	@Override
+	public Image getImage() {
+		return source;
+	}
+
+	@Override
+	public int getMinX() {
+		return 0;
+	}
+
+	@Override
+	public int getMinY() {
+		return 0;
+	}
+
+	@Override
+	public int getMaxX() {
+		return source.getWidth() - 1;
+	}
+
+	@Override
+	public int getMaxY() {
+		return source.getHeight() - 1;
+	}
+
+	@Override
+	public int getWidth() {
+		return source.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return source.getHeight();
+	}
+}
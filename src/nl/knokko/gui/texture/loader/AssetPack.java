@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A file that contains many assets and is mapped into memory as a whole, so that its entries can be read
+ * without copying them. The file starts with the 4 magic bytes 'G', 'L', 'A', 'P' and the number of entries
+ * as int. Every entry is described by the length of its name as unsigned short, the name in UTF-8 and the
+ * offset and length of its data as longs. All numbers are big endian. The data of the entries follows the
+ * descriptions. Asset packs can be created with write.
+ * 
+ * Files larger than 2GB are not supported because they can't be mapped into a single buffer.
+ * @author knokko
+ *
+ */
+public class AssetPack {
+	
+	public static final int MAGIC = 'G' << 24 | 'L' << 16 | 'A' << 8 | 'P';
+	
+	/**
+	 * Maps the given asset pack file into memory and reads its entry descriptions.
+	 * @throws IOException If the file can't be read or is not a valid asset pack
+	 */
+	public static AssetPack open(Path file) throws IOException {
+		MappedByteBuffer data;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			
+			// The mapping stays valid after the channel has been closed
+			data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		return new AssetPack(file, data);
+	}
+	
+	/**
+	 * Writes an asset pack file with the given entries. The entries will be stored in the iteration order of
+	 * the map.
+	 */
+	public static void write(Path file, Map<String,ByteBuffer> entries) throws IOException {
+		int headerSize = 8;
+		for (String name : entries.keySet())
+			headerSize += 2 + name.getBytes(StandardCharsets.UTF_8).length + 16;
+		ByteBuffer header = ByteBuffer.allocate(headerSize);
+		header.putInt(MAGIC);
+		header.putInt(entries.size());
+		long offset = headerSize;
+		for (Map.Entry<String,ByteBuffer> entry : entries.entrySet()) {
+			byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			header.putShort((short) name.length);
+			header.put(name);
+			header.putLong(offset);
+			header.putLong(entry.getValue().remaining());
+			offset += entry.getValue().remaining();
+		}
+		header.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (header.hasRemaining())
+				channel.write(header);
+			for (ByteBuffer data : entries.values()) {
+				ByteBuffer remaining = data.duplicate();
+				while (remaining.hasRemaining())
+					channel.write(remaining);
+			}
+		}
+	}
+	
+	private final Path file;
+	private final ByteBuffer data;
+	private final Map<String,Entry> entries;
+	
+	private AssetPack(Path file, ByteBuffer data) throws IOException {
+		this.file = file;
+		this.data = data.order(ByteOrder.BIG_ENDIAN);
+		try {
+			if (data.getInt(0) != MAGIC)
+				throw new IOException("Not an asset pack");
+			int count = data.getInt(4);
+			
+			// Every entry needs at least 2 bytes for the name length and 16 bytes for the offset and length
+			if (count < 0 || count > (data.capacity() - 8) / 18)
+				throw new IOException("Invalid entry count " + count + " in " + file);
+			this.entries = new LinkedHashMap<String,Entry>(2 * count);
+			int position = 8;
+			for (int index = 0; index < count; index++) {
+				int nameLength = data.getShort(position) & 0xFFFF;
+				byte[] name = new byte[nameLength];
+				ByteBuffer nameSource = data.duplicate();
+				nameSource.position(position + 2);
+				nameSource.get(name);
+				position += 2 + nameLength;
+				long offset = data.getLong(position);
+				long length = data.getLong(position + 8);
+				position += 16;
+				
+				// The sum of the offset and length could overflow, so the length is subtracted instead
+				if (offset < 0 || length < 0 || offset > data.capacity() - length)
+					throw new IOException("Entry " + new String(name, StandardCharsets.UTF_8) + " is out of bounds");
+				entries.put(new String(name, StandardCharsets.UTF_8), new Entry((int) offset, (int) length));
+			}
+		} catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+			throw new IOException("The entry table of " + file + " is truncated");
+		}
+	}
+	
+	/**
+	 * Gets the data of an entry of this pack. The returned buffer is a read-only view of the mapped file, so
+	 * no data is copied.
+	 * @param name The name of the entry
+	 * @return the data of the entry, or null if this pack has no entry with the given name
+	 */
+	public ByteBuffer getEntry(String name) {
+		Entry entry = entries.get(name);
+		if (entry == null)
+			return null;
+		ByteBuffer result = data.asReadOnlyBuffer();
+		result.position(entry.offset);
+		result.limit(entry.offset + entry.length);
+		return result.slice();
+	}
+	
+	public Set<String> getEntryNames() {
+		return Collections.unmodifiableSet(entries.keySet());
+	}
+	
+	public Path getFile() {
+		return file;
+	}
+	
+	private static class Entry {
+		
+		private final int offset;
+		private final int length;
+		
+		private Entry(int offset, int length) {
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+}
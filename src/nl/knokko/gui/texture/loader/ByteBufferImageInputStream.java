@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An ImageInputStream that reads directly from a ByteBuffer. Unlike the streams ImageIO creates for an
+ * InputStream, it doesn't cache the data on the heap or in a temporary file, so images can be decoded straight
+ * from a direct or memory-mapped buffer.
+ * @author knokko
+ *
+ */
+public class ByteBufferImageInputStream extends ImageInputStreamImpl {
+	
+	private final ByteBuffer data;
+	
+	/**
+	 * @param data The buffer to read from. Only the bytes between its position and limit will be read, and
+	 * the position of the buffer itself will not be changed.
+	 */
+	public ByteBufferImageInputStream(ByteBuffer data) {
+		this.data = data.slice();
+	}
+
+	@Override
+	public int read() throws IOException {
+		checkClosed();
+		bitOffset = 0;
+		if (streamPos >= data.limit())
+			return -1;
+		return data.get((int) streamPos++) & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] dest, int offset, int length) throws IOException {
+		checkClosed();
+		bitOffset = 0;
+		if (length == 0)
+			return 0;
+		int available = data.limit() - (int) Math.min(streamPos, data.limit());
+		if (available == 0)
+			return -1;
+		int count = Math.min(length, available);
+		ByteBuffer source = data.duplicate();
+		source.position((int) streamPos);
+		source.get(dest, offset, count);
+		streamPos += count;
+		return count;
+	}
+	
+	@Override
+	public long length() {
+		return data.limit();
+	}
+}
@@ -27,40 +27,108 @@ import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
 
+import nl.knokko.gui.texture.DynamicGuiTexture;
 import nl.knokko.gui.texture.GLGuiTexture;
 import nl.knokko.gui.texture.GLPartGuiTexture;
 import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.TiledGuiTexture;
 
+/**
+ * The texture loader for OpenGL. Textures loaded from the same path, or from images with exactly the same pixels,
+ * share a single OpenGL texture. A shared texture is deleted during the first endFrame after all GuiTextures
+ * that use it have been garbage collected.
+ * @author knokko
+ *
+ */
 public class GLGuiTextureLoader implements GuiTextureLoader {
 	
+	public static final int DEFAULT_TILE_SIZE = 512;
+	public static final long DEFAULT_TILE_BUDGET = 64 * 1024 * 1024;
+	public static final long DEFAULT_STAGING_IN_FLIGHT = 64 * 1024 * 1024;
+	public static final long DEFAULT_STAGING_POOLED = 16 * 1024 * 1024;
+	public static final int DEFAULT_DOWNSCALE_FRAMES = 60;
+	
 	private final List<Integer> textures;
+	private final BitSet opaqueTextures;
+	private final TileCache tileCache;
+	private final TextureVariantSelector variantSelector;
+	private final List<DynamicGuiTexture> dynamicTextures;
+	private final Map<String,SharedTexture> texturesByPath;
+	private final Map<Long,List<SharedTexture>> texturesByHash;
+	private final Set<TextureReference> references;
+	private final ReferenceQueue<GuiTexture> releasedTextures;
+	private final List<IntConsumer> deleteListeners;
 	
 	private PrintStream errorOutput;
+	private MipmapMode mipmapMode;
+	private boolean premultipliedAlpha;
+	
+	private long textureMemory;
+	
+	private final StagingBufferPool stagingPool;
+	private boolean usePixelBuffers;
+	private int[] pixelBuffers;
+	private int pixelBufferIndex;
+	
+	private long pathHits;
+	private long contentHits;
+	private long misses;
+	private long bytesSaved;
+	private long releasedCount;
+	
+	private long frameUploadBytes;
+	private long lastFrameUploadBytes;
+	private long totalUploadBytes;
 	
 	private static final int[] POWERS = {
 		1,8,16,32,64,128,256,512,1024,2048,4096,8192,16384,32768,65536,131072,262144,524288,1048576,
 		2097152, 4194304, 8388608, 16777216, 33554432, 67108864, 134217728, 268435456, 536870912, 1073741824
 	};
 	
-	private static boolean isPowerOf2(int size){
+	static boolean isPowerOf2(int size){
 		for(int power : POWERS)
 			if(power == size)
 				return true;
 		return false;
 	}
 	
-	private static int next2Power(int number) {
+	static int next2Power(int number) {
 		for (int index = 0; index < POWERS.length; index++)
 			if (POWERS[index] >= number)
 				return POWERS[index];
@@ -69,110 +137,813 @@ public class GLGuiTextureLoader implements GuiTextureLoader {
 
 	public GLGuiTextureLoader() {
 		textures = new ArrayList<Integer>();
+		opaqueTextures = new BitSet();
+		tileCache = new TileCache(new TileUploader(), DEFAULT_TILE_BUDGET);
+		variantSelector = new TextureVariantSelector((textureID, level) -> {
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_BASE_LEVEL, level);
+		}, DEFAULT_DOWNSCALE_FRAMES);
+		mipmapMode = MipmapMode.NONE;
+		dynamicTextures = new ArrayList<DynamicGuiTexture>();
+		stagingPool = new StagingBufferPool(DEFAULT_STAGING_IN_FLIGHT, DEFAULT_STAGING_POOLED);
+		texturesByPath = new HashMap<String,SharedTexture>();
+		texturesByHash = new HashMap<Long,List<SharedTexture>>();
+		references = new HashSet<TextureReference>();
+		releasedTextures = new ReferenceQueue<GuiTexture>();
+		deleteListeners = new ArrayList<IntConsumer>(1);
 		errorOutput = System.out;
 	}
 	
-	@Override
-	public GuiTexture loadTexture(BufferedImage source, int minX, int minY, int maxX, int maxY) {
-		if (isPowerOf2(source.getWidth()) && isPowerOf2(source.getHeight())) {
-			boolean allowAlpha = source.getTransparency() != BufferedImage.OPAQUE;
-			int width = source.getWidth();
-			int height = source.getHeight();
-			ByteBuffer buffer = BufferUtils.createByteBuffer(source.getWidth() * source.getHeight() * (allowAlpha ? 4 : 3)); //4 for RGBA, 3 for RGB
-	    	for(int y = 0; y < height; y++){
-	        	for(int x = 0; x < width; x++){
-	        		int rgb = source.getRGB(x, y);;
-	        		buffer.put((byte) (rgb >> 16));
-	        		buffer.put((byte) (rgb >> 8));
-	        		buffer.put((byte) (rgb >> 0));
-	        		if(allowAlpha)
-	        			buffer.put((byte) (rgb >> 24));
-	        	}
-	    	}
-	    	buffer.flip();
-	    	int textureID = GL11.glGenTextures();
-	    	GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
-	    	GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, allowAlpha ? GL11.GL_RGBA8 : GL11.GL_RGB8, source.getWidth(), source.getHeight(), 0, allowAlpha ? GL11.GL_RGBA : GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, buffer);
-	    	textures.add(textureID);
-	    	return new GLPartGuiTexture(textureID, (float) minX / width, (float) minY / height, (float) maxX / width, (float) maxY / height, width, height);
+	/**
+	 * Adds a listener that will be notified with the id of every texture this loader deletes. OpenGL can reuse
+	 * the id for a new texture after that.
+	 */
+	public void addDeleteListener(IntConsumer listener) {
+		deleteListeners.add(listener);
+	}
+	
+	public void removeDeleteListener(IntConsumer listener) {
+		deleteListeners.remove(listener);
+	}
+	
+	private void deleteTextureID(int textureID) {
+		GL11.glDeleteTextures(textureID);
+		for (int index = 0; index < deleteListeners.size(); index++)
+			deleteListeners.get(index).accept(textureID);
+	}
+	
+	private int uploadTexture(BufferedImage source) {
+		return uploadTexture(source, true);
+	}
+	
+	private int uploadTexture(BufferedImage source, boolean allowMipmaps) {
+		boolean allowAlpha = source.getTransparency() != BufferedImage.OPAQUE;
+		int bytes = source.getWidth() * source.getHeight() * (allowAlpha ? 4 : 3); //4 for RGBA, 3 for RGB
+		ByteBuffer buffer = stagingPool.acquire(bytes);
+		int textureID;
+		try {
+			fillBuffer(source, buffer, allowAlpha);
+			textureID = GL11.glGenTextures();
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+			GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, allowAlpha ? GL11.GL_RGBA8 : GL11.GL_RGB8, source.getWidth(), source.getHeight(), 0, allowAlpha ? GL11.GL_RGBA : GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, buffer);
+		} finally {
+			stagingPool.release(buffer);
+		}
+		if (allowMipmaps && mipmapMode != MipmapMode.NONE)
+			bytes += uploadMipmaps(source, textureID, allowAlpha);
+		textures.add(textureID);
+		textureMemory += bytes;
+		frameUploadBytes += bytes;
+		totalUploadBytes += bytes;
+		if (!allowAlpha)
+			opaqueTextures.set(textureID);
+		return textureID;
+	}
+	
+	/**
+	 * Uploads the mipmap levels of the texture that is currently bound and registers it at the variant selector.
+	 * @return The number of bytes of the levels
+	 */
+	private int uploadMipmaps(BufferedImage source, int textureID, boolean allowAlpha) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int levels = MipmapGenerator.getLevelCount(width, height);
+		int channels = allowAlpha ? 4 : 3;
+		int bytes = 0;
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		if (mipmapMode == MipmapMode.GENERATE) {
+			GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+			for (int level = 1; level < levels; level++)
+				bytes += Math.max(1, width >> level) * Math.max(1, height >> level) * channels;
 		} else {
-			BufferedImage image2 = new BufferedImage(next2Power(source.getWidth()), next2Power(source.getHeight()), source.getType());
-			Graphics2D g = image2.createGraphics();
-			g.drawImage(source, 0, 0, null);
-			g.dispose();
-			return loadTexture(image2, minX, minY, maxX, maxY);
+			int[] pixels = source.getRGB(0, 0, width, height, null, 0, width);
+			MipmapGenerator.Filter filter = mipmapMode == MipmapMode.BOX ? MipmapGenerator.Filter.BOX : MipmapGenerator.Filter.LANCZOS;
+			int[][] mipmaps = MipmapGenerator.generate(pixels, width, height, filter, ForkJoinPool.commonPool());
+			for (int level = 1; level < levels; level++) {
+				int levelWidth = Math.max(1, width >> level);
+				int levelHeight = Math.max(1, height >> level);
+				ByteBuffer buffer = stagingPool.acquire(4 * mipmaps[level].length);
+				try {
+					IntBuffer staging = buffer.asIntBuffer();
+					if (premultipliedAlpha)
+						PixelKernels.premultiplyRow(mipmaps[level], 0, mipmaps[level], 0, mipmaps[level].length);
+					staging.put(mipmaps[level]);
+					staging.flip();
+					GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, allowAlpha ? GL11.GL_RGBA8 : GL11.GL_RGB8, levelWidth, levelHeight, 0, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, staging);
+				} finally {
+					stagingPool.release(buffer);
+				}
+				bytes += levelWidth * levelHeight * channels;
+			}
 		}
+		variantSelector.register(textureID, levels);
+		return bytes;
+	}
+	
+	/**
+	 * Sets how mipmaps should be created for the textures that are loaded after this call. Mipmaps make textures
+	 * that are drawn much smaller than their size look better, but they need a third more memory. Dynamic
+	 * textures and the tiles of tiled textures never get mipmaps.
+	 */
+	public void setMipmapMode(MipmapMode mode) {
+		this.mipmapMode = mode;
+	}
+	
+	public MipmapMode getMipmapMode() {
+		return mipmapMode;
+	}
+	
+	/**
+	 * Enables or disables premultiplied alpha. When enabled, the color channels of all textures are multiplied
+	 * by their alpha before they are uploaded and the GL renderer blends with GL_ONE instead of GL_SRC_ALPHA.
+	 * This prevents the dark fringes that appear when transparent texels are filtered together with opaque
+	 * texels. It should be set before any texture is loaded, since textures that were already uploaded are not
+	 * converted.
+	 */
+	public void setPremultipliedAlpha(boolean premultipliedAlpha) {
+		this.premultipliedAlpha = premultipliedAlpha;
+	}
+	
+	public boolean isPremultipliedAlpha() {
+		return premultipliedAlpha;
+	}
+	
+	/**
+	 * @return The selector that chooses the base mipmap level of the mipmapped textures of this loader
+	 */
+	public TextureVariantSelector getVariantSelector() {
+		return variantSelector;
+	}
+	
+	private void fillBuffer(BufferedImage source, ByteBuffer buffer, boolean allowAlpha) {
+		int width = source.getWidth();
+		int[] row = new int[width];
+		byte[] rowBytes = new byte[width * (allowAlpha ? 4 : 3)];
+		for (int y = 0; y < source.getHeight(); y++) {
+			source.getRGB(0, y, width, 1, row, 0, width);
+			if (allowAlpha)
+				PixelKernels.toRGBA(row, 0, rowBytes, 0, width, premultipliedAlpha);
+			else
+				PixelKernels.toRGB(row, 0, rowBytes, 0, width);
+			buffer.put(rowBytes);
+		}
+		buffer.flip();
+	}
+	
+	@Override
+	public GuiTexture loadTexture(BufferedImage source, int minX, int minY, int maxX, int maxY) {
+		SharedTexture shared = share(source);
+		return reference(shared, new GLPartGuiTexture(shared.textureID, (float) minX / shared.width, (float) minY / shared.height, (float) maxX / shared.width, (float) maxY / shared.height, shared.width, shared.height));
 	}
 
 	@Override
 	public GuiTexture loadTexture(BufferedImage source) {
-		if (isPowerOf2(source.getWidth()) && isPowerOf2(source.getHeight())) {
-			boolean allowAlpha = source.getTransparency() != BufferedImage.OPAQUE;
-			ByteBuffer buffer = BufferUtils.createByteBuffer(source.getWidth() * source.getHeight() * (allowAlpha ? 4 : 3)); //4 for RGBA, 3 for RGB
-	    	for(int y = 0; y < source.getHeight(); y++){
-	        	for(int x = 0; x < source.getWidth(); x++){
-	        		int rgb = source.getRGB(x, y);
-	        		buffer.put((byte) (rgb >> 16));
-	        		buffer.put((byte) (rgb >> 8));
-	        		buffer.put((byte) (rgb >> 0));
-	        		if(allowAlpha)
-	        			buffer.put((byte) (rgb >> 24));
-	        	}
-	    	}
-	    	buffer.flip();
-	    	int textureID = GL11.glGenTextures();
-	    	GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
-	    	GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
-	    	GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, allowAlpha ? GL11.GL_RGBA8 : GL11.GL_RGB8, source.getWidth(), source.getHeight(), 0, allowAlpha ? GL11.GL_RGBA : GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, buffer);
-	    	textures.add(textureID);
-	    	return new GLGuiTexture(textureID, source.getWidth(), source.getHeight());
-		} else {
-			BufferedImage image2 = new BufferedImage(next2Power(source.getWidth()), next2Power(source.getHeight()), source.getType());
-			Graphics2D g = image2.createGraphics();
+		return loadFullTexture(share(source), source.getWidth(), source.getHeight());
+	}
+	
+	private GuiTexture loadFullTexture(SharedTexture shared, int width, int height) {
+		GuiTexture texture = shared.fullTexture == null ? null : shared.fullTexture.get();
+		if (texture == null) {
+			if (shared.width == width && shared.height == height)
+				texture = new GLGuiTexture(shared.textureID, width, height);
+			else
+				texture = new GLPartGuiTexture(shared.textureID, 0, 0, (float) (width - 1) / shared.width, (float) (height - 1) / shared.height, shared.width, shared.height);
+			shared.fullTexture = new WeakReference<GuiTexture>(texture);
+			reference(shared, texture);
+		}
+		return texture;
+	}
+	
+	/**
+	 * Finds the shared texture with the same pixels as the given image, or uploads the image if there is no
+	 * such texture yet.
+	 */
+	private SharedTexture share(BufferedImage source) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		long hash = hashPixels(source);
+		boolean allowAlpha = source.getTransparency() != BufferedImage.OPAQUE;
+		SharedTexture shared = findShared(hash, width, height, allowAlpha, expected -> fillBuffer(source, expected, allowAlpha));
+		if (shared != null) {
+			contentHits++;
+			bytesSaved += shared.bytes;
+			return shared;
+		}
+		BufferedImage image = source;
+		if (!isPowerOf2(width) || !isPowerOf2(height)) {
+			image = new BufferedImage(next2Power(width), next2Power(height), source.getType());
+			Graphics2D g = image.createGraphics();
 			g.drawImage(source, 0, 0, null);
 			g.dispose();
-			return loadTexture(image2, 0, 0, source.getWidth() - 1, source.getHeight() - 1);
 		}
+		long memoryBefore = textureMemory;
+		shared = new SharedTexture(uploadTexture(image), image.getWidth(), image.getHeight(), width, height, hash, textureMemory - memoryBefore);
+		addShared(shared);
+		misses++;
+		return shared;
 	}
-
-	@Override
-	public GuiTexture loadTexture(String texturePath, int minX, int minY, int maxX, int maxY) {
+	
+	/**
+	 * Finds the shared texture with the given hash whose pixels are really equal to the expected pixels. Hash
+	 * collisions are rare, but not impossible, so the pixels of the candidates are read back from OpenGL and
+	 * compared before a texture is shared.
+	 * @param expectedPixels Puts the expected pixels in a buffer, in the same layout as they would be uploaded
+	 */
+	private SharedTexture findShared(long hash, int width, int height, boolean allowAlpha, Consumer<ByteBuffer> expectedPixels) {
+		List<SharedTexture> bucket = texturesByHash.get(hash);
+		if (bucket == null)
+			return null;
+		int channels = allowAlpha ? 4 : 3;
+		ByteBuffer expected = null;
+		ByteBuffer actual = null;
 		try {
-			URL resource = GLGuiTextureLoader.class.getClassLoader().getResource(texturePath);
-			if (resource == null) {
-				throw new IOException("Can't find texture " + texturePath);
+			for (SharedTexture shared : bucket) {
+				if (shared.sourceWidth != width || shared.sourceHeight != height || opaqueTextures.get(shared.textureID) == allowAlpha)
+					continue;
+				if (expected == null) {
+					expected = stagingPool.acquire(width * height * channels);
+					expectedPixels.accept(expected);
+				}
+				
+				// The staging pool is not used for the readback because it would have to hand out 2 buffers at once
+				if (actual == null)
+					actual = MemoryUtil.memAlloc(shared.width * shared.height * channels);
+				GL11.glBindTexture(GL11.GL_TEXTURE_2D, shared.textureID);
+				GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+				GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, allowAlpha ? GL11.GL_RGBA : GL11.GL_RGB, GL11.GL_UNSIGNED_BYTE, actual);
+				GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 4);
+				if (equalRows(expected, actual, width * channels, shared.width * channels, height))
+					return shared;
 			}
-			BufferedImage image = ImageIO.read(resource);
-			return loadTexture(image, minX, minY, maxX, maxY);
-		} catch (IOException e) {
-			errorOutput.println("Can't load texture '" + texturePath + "': " + e.getMessage());
-			e.printStackTrace(errorOutput);
 			return null;
+		} finally {
+			if (expected != null)
+				stagingPool.release(expected);
+			if (actual != null)
+				MemoryUtil.memFree(actual);
+		}
+	}
+	
+	/**
+	 * Compares the rows of the expected pixels with the first bytes of the rows of the (padded) actual pixels.
+	 */
+	private static boolean equalRows(ByteBuffer expected, ByteBuffer actual, int rowBytes, int actualRowBytes, int height) {
+		for (int y = 0; y < height; y++) {
+			ByteBuffer expectedRow = expected.duplicate();
+			expectedRow.limit(y * rowBytes + rowBytes);
+			expectedRow.position(y * rowBytes);
+			ByteBuffer actualRow = actual.duplicate();
+			actualRow.limit(y * actualRowBytes + rowBytes);
+			actualRow.position(y * actualRowBytes);
+			if (!expectedRow.equals(actualRow))
+				return false;
+		}
+		return true;
+	}
+	
+	private void addShared(SharedTexture shared) {
+		List<SharedTexture> bucket = texturesByHash.get(shared.hash);
+		if (bucket == null) {
+			bucket = new ArrayList<SharedTexture>(1);
+			texturesByHash.put(shared.hash, bucket);
+		}
+		bucket.add(shared);
+	}
+	
+	private void removeShared(SharedTexture shared) {
+		List<SharedTexture> bucket = texturesByHash.get(shared.hash);
+		if (bucket != null) {
+			bucket.removeIf(candidate -> candidate == shared);
+			if (bucket.isEmpty())
+				texturesByHash.remove(shared.hash);
+		}
+	}
+	
+	private static long hashPixels(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] row = new int[width];
+		long hash = 0xcbf29ce484222325L ^ (width * 31L + height) ^ (long) image.getTransparency() << 48;
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			for (int x = 0; x < width; x++) {
+				hash = (hash ^ row[x]) * 0x9E3779B97F4A7C15L;
+				hash ^= hash >>> 29;
+			}
+		}
+		return hash;
+	}
+	
+	/**
+	 * Registers the given texture as a user of the shared texture. The shared texture will be deleted once all
+	 * its users have been garbage collected.
+	 */
+	private GuiTexture reference(SharedTexture shared, GuiTexture texture) {
+		shared.references++;
+		references.add(new TextureReference(texture, shared, releasedTextures));
+		return texture;
+	}
+	
+	/**
+	 * Deletes the shared textures whose GuiTextures have all been garbage collected. This method is called by
+	 * endFrame, so it runs on the thread that owns the OpenGL context.
+	 */
+	private void deleteReleasedTextures() {
+		Reference<? extends GuiTexture> next;
+		while ((next = releasedTextures.poll()) != null) {
+			TextureReference reference = (TextureReference) next;
+			
+			// References that were registered before the last clean() have already been deleted
+			if (!references.remove(reference))
+				continue;
+			SharedTexture shared = reference.shared;
+			if (--shared.references == 0) {
+				deleteShared(shared);
+				texturesByPath.values().removeIf(candidate -> candidate == shared);
+			}
+		}
+	}
+	
+	private void deleteShared(SharedTexture shared) {
+		deleteTextureID(shared.textureID);
+		textures.remove((Integer) shared.textureID);
+		opaqueTextures.clear(shared.textureID);
+		variantSelector.unregister(shared.textureID);
+		textureMemory -= shared.bytes;
+		removeShared(shared);
+		releasedCount++;
+	}
+	
+	/**
+	 * Releases the memory that this loader can restore by itself when it is needed again: the textures that
+	 * are cached by path, but not used by any GuiTexture, the least recently used tiles, the pixel buffers and
+	 * the pooled staging buffers. This is meant for when the windows are not visible for a while.
+	 * @param tileFloor The number of bytes the resident tiles can keep using
+	 */
+	public void trim(long tileFloor) {
+		deleteReleasedTextures();
+		tileCache.trim(tileFloor);
+		
+		// Several paths can share the same texture, so it has to be collected first to delete it only once
+		Set<SharedTexture> unused = Collections.newSetFromMap(new IdentityHashMap<SharedTexture,Boolean>());
+		Iterator<SharedTexture> iterator = texturesByPath.values().iterator();
+		while (iterator.hasNext()) {
+			SharedTexture shared = iterator.next();
+			if (shared.references == 0) {
+				iterator.remove();
+				unused.add(shared);
+			}
+		}
+		for (SharedTexture shared : unused)
+			deleteShared(shared);
+		if (pixelBuffers != null) {
+			GL15.glDeleteBuffers(pixelBuffers);
+			pixelBuffers = null;
+		}
+		stagingPool.trim();
+	}
+	
+	/**
+	 * Creates a tiled texture for the given image. Unlike the other load methods, this method doesn't upload
+	 * anything: the tiles will be uploaded when they become visible. This should be used for images that are
+	 * larger than the maximum texture size.
+	 * @param source The (large) image
+	 * @param tileSize The width and height of the tiles, must be a power of 2
+	 * @return The tiled texture
+	 */
+	public TiledGuiTexture loadTiledTexture(BufferedImage source, int tileSize) {
+		return new TiledGuiTexture(source, tileSize, tileCache);
+	}
+	
+	public TiledGuiTexture loadTiledTexture(BufferedImage source) {
+		return loadTiledTexture(source, DEFAULT_TILE_SIZE);
+	}
+	
+	/**
+	 * Creates a texture whose pixels can be changed later. All pixels are initially transparent. The changes
+	 * will be uploaded when the next frame is rendered, see updateDynamicTextures.
+	 * @param width The width of the texture in pixels
+	 * @param height The height of the texture in pixels
+	 * @return The new dynamic texture
+	 */
+	public DynamicGuiTexture createDynamicTexture(int width, int height) {
+		int textureWidth = next2Power(width);
+		int textureHeight = next2Power(height);
+		int textureID = GL11.glGenTextures();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8, textureWidth, textureHeight, 0, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, (IntBuffer) null);
+		textures.add(textureID);
+		textureMemory += 4L * textureWidth * textureHeight;
+		DynamicGuiTexture texture = new DynamicGuiTexture(textureID, width, height, textureWidth, textureHeight);
+		dynamicTextures.add(texture);
+		return texture;
+	}
+	
+	/**
+	 * Creates a dynamic texture that initially contains the pixels of the given image.
+	 */
+	public DynamicGuiTexture loadDynamicTexture(BufferedImage source) {
+		DynamicGuiTexture texture = createDynamicTexture(source.getWidth(), source.getHeight());
+		source.getRGB(0, 0, source.getWidth(), source.getHeight(), texture.getPixels(), 0, source.getWidth());
+		return texture;
+	}
+	
+	/**
+	 * Deletes a dynamic texture that was created by this loader. The texture can't be rendered anymore after
+	 * this method has been called.
+	 */
+	public void deleteDynamicTexture(DynamicGuiTexture texture) {
+		if (dynamicTextures.remove(texture)) {
+			deleteTextureID(texture.getTextureID());
+			textures.remove((Integer) texture.getTextureID());
+			textureMemory -= 4L * texture.getTextureWidth() * texture.getTextureHeight();
 		}
 	}
+	
+	/**
+	 * Uploads the dirty rectangles of all dynamic textures of this loader. The GL renderer calls this method
+	 * before it renders a frame.
+	 */
+	public void updateDynamicTextures() {
+		for (int index = 0; index < dynamicTextures.size(); index++) {
+			DynamicGuiTexture texture = dynamicTextures.get(index);
+			if (texture.isDirty()) {
+				uploadDirtyRegion(texture);
+				texture.clearDirty();
+			}
+		}
+	}
+	
+	private void uploadDirtyRegion(DynamicGuiTexture texture) {
+		int minX = texture.getDirtyMinX();
+		int minY = texture.getDirtyMinY();
+		int width = texture.getDirtyMaxX() - minX;
+		int height = texture.getDirtyMaxY() - minY;
+		int size = width * height;
+		int[] pixels = texture.getPixels();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getTextureID());
+		boolean streamed = false;
+		if (usePixelBuffers) {
+			
+			// Alternate between 2 pixel buffers so that we don't need to wait until the previous upload is done
+			if (pixelBuffers == null) {
+				pixelBuffers = new int[] {GL15.glGenBuffers(), GL15.glGenBuffers()};
+			}
+			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, pixelBuffers[pixelBufferIndex]);
+			pixelBufferIndex ^= 1;
+			GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, 4L * size, GL15.GL_STREAM_DRAW);
+			ByteBuffer mapped = GL15.glMapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, GL15.GL_WRITE_ONLY, 4L * size, null);
+			
+			// If the buffer can't be mapped, the pixels are uploaded directly like when pixel buffers are disabled
+			if (mapped != null) {
+				IntBuffer target = mapped.order(ByteOrder.nativeOrder()).asIntBuffer();
+				putRows(target, pixels, texture.getWidth(), minX, minY, width, height);
+				GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+				GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, minX, minY, width, height, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, 0L);
+				streamed = true;
+			}
+			GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+		}
+		if (!streamed) {
+			ByteBuffer buffer = stagingPool.acquire(4 * size);
+			try {
+				IntBuffer staging = buffer.asIntBuffer();
+				putRows(staging, pixels, texture.getWidth(), minX, minY, width, height);
+				staging.flip();
+				GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, minX, minY, width, height, GL12.GL_BGRA, GL12.GL_UNSIGNED_INT_8_8_8_8_REV, staging);
+			} finally {
+				stagingPool.release(buffer);
+			}
+		}
+		frameUploadBytes += 4L * size;
+		totalUploadBytes += 4L * size;
+	}
+	
+	private void putRows(IntBuffer target, int[] pixels, int pixelsWidth, int minX, int minY, int width, int height) {
+		if (premultipliedAlpha) {
+			int[] row = new int[width];
+			for (int y = minY; y < minY + height; y++) {
+				PixelKernels.premultiplyRow(pixels, minX + y * pixelsWidth, row, 0, width);
+				target.put(row);
+			}
+		} else {
+			for (int y = minY; y < minY + height; y++)
+				target.put(pixels, minX + y * pixelsWidth, width);
+		}
+	}
+	
+	/**
+	 * Enables or disables streaming the dynamic texture uploads through 2 alternating pixel buffer objects. This
+	 * can be faster when large regions are changed every frame because the driver can copy the data
+	 * asynchronously.
+	 */
+	public void setUsePixelBuffers(boolean usePixelBuffers) {
+		this.usePixelBuffers = usePixelBuffers;
+	}
+	
+	/**
+	 * Ends the current frame: textures that are no longer referenced are deleted, the base mipmap levels are
+	 * updated, the tile cache evicts the
+	 * tiles it doesn't need anymore and the upload counter of this frame is stored so that
+	 * getLastFrameUploadBytes will return it.
+	 */
+	public void endFrame() {
+		deleteReleasedTextures();
+		variantSelector.endFrame();
+		tileCache.endFrame();
+		lastFrameUploadBytes = frameUploadBytes;
+		frameUploadBytes = 0;
+	}
+	
+	/**
+	 * @return The number of bytes that was uploaded by this loader during the previous frame
+	 */
+	public long getLastFrameUploadBytes() {
+		return lastFrameUploadBytes;
+	}
+	
+	/**
+	 * @return The total number of bytes that was uploaded by this loader
+	 */
+	public long getTotalUploadBytes() {
+		return totalUploadBytes;
+	}
+	
+	@Override
+	public GuiTexture loadTexture(String texturePath, int minX, int minY, int maxX, int maxY) {
+		SharedTexture shared = shareResource(texturePath);
+		if (shared == null)
+			return null;
+		return reference(shared, new GLPartGuiTexture(shared.textureID, (float) minX / shared.width, (float) minY / shared.height, (float) maxX / shared.width, (float) maxY / shared.height, shared.width, shared.height));
+	}
 
 	@Override
 	public GuiTexture loadTexture(String texturePath) {
+		SharedTexture shared = shareResource(texturePath);
+		if (shared == null)
+			return null;
+		return loadFullTexture(shared, shared.sourceWidth, shared.sourceHeight);
+	}
+	
+	private SharedTexture shareResource(String texturePath) {
+		SharedTexture shared = texturesByPath.get(texturePath);
+		if (shared != null) {
+			pathHits++;
+			bytesSaved += shared.bytes;
+			return shared;
+		}
 		try {
 			URL resource = GLGuiTextureLoader.class.getClassLoader().getResource(texturePath);
 			if (resource == null) {
 				throw new IOException("Can't find texture " + texturePath);
 			}
 			BufferedImage image = ImageIO.read(resource);
-			return loadTexture(image);
+			shared = share(image);
+			texturesByPath.put(texturePath, shared);
+			return shared;
 		} catch (IOException e) {
 			errorOutput.println("Can't load texture '" + texturePath + "': " + e.getMessage());
 			e.printStackTrace(errorOutput);
 			return null;
 		}
 	}
+	
+	/**
+	 * Loads a texture from a file. The file is mapped into memory, so its data is not copied to the heap. The
+	 * file can be a raw texture (see RawTexture), which is uploaded without decoding it, or an image in any
+	 * format supported by ImageIO. Files are cached by their absolute path.
+	 * @param file The file to load
+	 * @return the texture, or null if the file couldn't be loaded
+	 */
+	public GuiTexture loadTexture(Path file) {
+		String key = "file:" + file.toAbsolutePath();
+		SharedTexture shared = texturesByPath.get(key);
+		if (shared != null) {
+			pathHits++;
+			bytesSaved += shared.bytes;
+		} else {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				shared = shareBuffer(data);
+				texturesByPath.put(key, shared);
+			} catch (IOException e) {
+				errorOutput.println("Can't load texture file '" + file + "': " + e.getMessage());
+				e.printStackTrace(errorOutput);
+				return null;
+			}
+		}
+		return loadFullTexture(shared, shared.sourceWidth, shared.sourceHeight);
+	}
+	
+	/**
+	 * Loads a texture from the remaining bytes of the given buffer, which can be a raw texture (see RawTexture)
+	 * or an image in any format supported by ImageIO. Raw textures in a direct buffer are uploaded straight
+	 * from the buffer and images are decoded without copying the buffer. The position of the buffer is not
+	 * changed.
+	 * @param data The texture data
+	 * @return the texture, or null if the data couldn't be loaded
+	 */
+	public GuiTexture loadTexture(ByteBuffer data) {
+		try {
+			SharedTexture shared = shareBuffer(data);
+			return loadFullTexture(shared, shared.sourceWidth, shared.sourceHeight);
+		} catch (IOException e) {
+			errorOutput.println("Can't load texture from buffer: " + e.getMessage());
+			e.printStackTrace(errorOutput);
+			return null;
+		}
+	}
+	
+	/**
+	 * Loads the texture in the entry with the given name of the asset pack. The entry is read from the mapped
+	 * pack without copying it, see loadTexture(ByteBuffer). Entries are cached by their pack and name.
+	 * @param pack The asset pack that contains the texture
+	 * @param entryName The name of the entry
+	 * @return the texture, or null if the entry couldn't be loaded
+	 */
+	public GuiTexture loadTexture(AssetPack pack, String entryName) {
+		String key = "pack:" + pack.getFile().toAbsolutePath() + "!" + entryName;
+		SharedTexture shared = texturesByPath.get(key);
+		if (shared != null) {
+			pathHits++;
+			bytesSaved += shared.bytes;
+		} else {
+			try {
+				ByteBuffer data = pack.getEntry(entryName);
+				if (data == null)
+					throw new IOException("There is no entry " + entryName + " in " + pack.getFile());
+				shared = shareBuffer(data);
+				texturesByPath.put(key, shared);
+			} catch (IOException e) {
+				errorOutput.println("Can't load texture '" + entryName + "' from asset pack: " + e.getMessage());
+				e.printStackTrace(errorOutput);
+				return null;
+			}
+		}
+		return loadFullTexture(shared, shared.sourceWidth, shared.sourceHeight);
+	}
+	
+	private SharedTexture shareBuffer(ByteBuffer data) throws IOException {
+		if (RawTexture.isRaw(data))
+			return shareRaw(RawTexture.read(data), data);
+		return share(decode(data));
+	}
+	
+	/**
+	 * Decodes the image in the remaining bytes of the given buffer without copying them
+	 */
+	private static BufferedImage decode(ByteBuffer data) throws IOException {
+		try (ImageInputStream input = new ByteBufferImageInputStream(data)) {
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+			if (!readers.hasNext())
+				throw new IOException("Unsupported image format");
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(input, true, true);
+				return reader.read(0);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+	
+	/**
+	 * Finds the shared texture with the same pixels as the given raw texture, or uploads it if there is no such
+	 * texture yet.
+	 */
+	private SharedTexture shareRaw(RawTexture raw, ByteBuffer data) {
+		ByteBuffer pixels = data.duplicate();
+		pixels.position(data.position() + RawTexture.HEADER_SIZE);
+		pixels.limit(pixels.position() + raw.getPixelBytes());
+		pixels = pixels.slice();
+		long hash = hashBytes(pixels, raw);
+		ByteBuffer rawPixels = pixels;
+		SharedTexture shared = findShared(hash, raw.getWidth(), raw.getHeight(), raw.hasAlpha(), expected -> fillRaw(rawPixels, expected, raw.hasAlpha()));
+		if (shared != null) {
+			contentHits++;
+			bytesSaved += shared.bytes;
+			return shared;
+		}
+		long memoryBefore = textureMemory;
+		int textureID = uploadRaw(raw, pixels);
+		shared = new SharedTexture(textureID, next2Power(raw.getWidth()), next2Power(raw.getHeight()), raw.getWidth(), raw.getHeight(), hash, textureMemory - memoryBefore);
+		addShared(shared);
+		misses++;
+		return shared;
+	}
+	
+	/**
+	 * Copies the pixels of a raw texture to the buffer and premultiplies their alpha if needed.
+	 */
+	private void fillRaw(ByteBuffer pixels, ByteBuffer buffer, boolean allowAlpha) {
+		buffer.put(pixels.duplicate());
+		buffer.flip();
+		if (allowAlpha && premultipliedAlpha) {
+			for (int index = 0; index < buffer.limit(); index += 4) {
+				int argb = (buffer.get(index + 3) & 0xFF) << 24 | (buffer.get(index) & 0xFF) << 16 | (buffer.get(index + 1) & 0xFF) << 8 | (buffer.get(index + 2) & 0xFF);
+				argb = PixelKernels.premultiply(argb);
+				buffer.put(index, (byte) (argb >> 16));
+				buffer.put(index + 1, (byte) (argb >> 8));
+				buffer.put(index + 2, (byte) argb);
+			}
+		}
+	}
+	
+	private static long hashBytes(ByteBuffer pixels, RawTexture raw) {
+		ByteBuffer source = pixels.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		
+		// Use a different seed than hashPixels because the same pixels are hashed differently
+		long hash = 0x84222325cbf29ce4L ^ (raw.getWidth() * 31L + raw.getHeight()) ^ (long) raw.getFormat() << 48;
+		while (source.remaining() >= 8) {
+			hash = (hash ^ source.getLong()) * 0x9E3779B97F4A7C15L;
+			hash ^= hash >>> 29;
+		}
+		while (source.hasRemaining()) {
+			hash = (hash ^ source.get()) * 0x9E3779B97F4A7C15L;
+			hash ^= hash >>> 29;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Uploads the pixels of a raw texture. Direct buffers are passed to OpenGL as they are, unless the alpha has
+	 * to be premultiplied or the buffer is on the heap, in which case they are copied to a staging buffer first.
+	 * The texture is padded to a power of 2 like the other textures.
+	 */
+	private int uploadRaw(RawTexture raw, ByteBuffer pixels) {
+		int width = raw.getWidth();
+		int height = raw.getHeight();
+		int textureWidth = next2Power(width);
+		int textureHeight = next2Power(height);
+		boolean allowAlpha = raw.hasAlpha();
+		int channels = allowAlpha ? 4 : 3;
+		int format = allowAlpha ? GL11.GL_RGBA : GL11.GL_RGB;
+		boolean stage = !pixels.isDirect() || (allowAlpha && premultipliedAlpha);
+		ByteBuffer staging = stage ? stagingPool.acquire(pixels.remaining()) : null;
+		int textureID;
+		try {
+			if (stage)
+				fillRaw(pixels, staging, allowAlpha);
+			textureID = GL11.glGenTextures();
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureID);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+			
+			// The rows of raw RGB textures are not padded to a multiple of 4 bytes
+			GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+			ByteBuffer source = stage ? staging : pixels;
+			if (textureWidth == width && textureHeight == height) {
+				GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, allowAlpha ? GL11.GL_RGBA8 : GL11.GL_RGB8, width, height, 0, format, GL11.GL_UNSIGNED_BYTE, source);
+			} else {
+				GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, allowAlpha ? GL11.GL_RGBA8 : GL11.GL_RGB8, textureWidth, textureHeight, 0, format, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+				GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, width, height, format, GL11.GL_UNSIGNED_BYTE, source);
+			}
+			GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+		} finally {
+			if (staging != null)
+				stagingPool.release(staging);
+		}
+		int bytes = textureWidth * textureHeight * channels;
+		
+		// Raw textures are not available as int pixels, so the mipmaps are always generated by OpenGL
+		if (mipmapMode != MipmapMode.NONE) {
+			int levels = MipmapGenerator.getLevelCount(textureWidth, textureHeight);
+			GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+			GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+			for (int level = 1; level < levels; level++)
+				bytes += Math.max(1, textureWidth >> level) * Math.max(1, textureHeight >> level) * channels;
+			variantSelector.register(textureID, levels);
+		}
+		textures.add(textureID);
+		textureMemory += bytes;
+		frameUploadBytes += bytes;
+		totalUploadBytes += bytes;
+		if (!allowAlpha)
+			opaqueTextures.set(textureID);
+		return textureID;
+	}
+	
+	/**
+	 * Uploads an image that was already decoded from the given texture path, so that later calls to
+	 * loadTexture(texturePath) don't need to decode it again. This allows the decoding to be done on another
+	 * thread. Nothing happens if the texture path has already been loaded.
+	 * @param texturePath The path the image was decoded from
+	 * @param image The decoded image
+	 */
+	public void addDecodedTexture(String texturePath, BufferedImage image) {
+		if (!texturesByPath.containsKey(texturePath))
+			texturesByPath.put(texturePath, share(image));
+	}
 
 	@Override
 	public GuiTextureLoader setErrorOutput(PrintStream output) {
@@ -180,8 +951,188 @@ public class GLGuiTextureLoader implements GuiTextureLoader {
 		return this;
 	}
 	
+	/**
+	 * Checks whether the texture with the given id was uploaded without alpha channel. Quads that render such
+	 * a texture completely hide everything that was rendered behind them.
+	 * @param textureID The id of the texture
+	 * @return true if the texture was loaded by this loader and is opaque, false otherwise
+	 */
+	public boolean isOpaque(int textureID) {
+		return textureID >= 0 && opaqueTextures.get(textureID);
+	}
+	
+	/**
+	 * @return The number of bytes of texture data that was uploaded by this loader
+	 */
+	public long getTextureMemory() {
+		return textureMemory;
+	}
+	
+	/**
+	 * @return The cache that keeps track of the resident tiles of the tiled textures of this loader
+	 */
+	public TileCache getTileCache() {
+		return tileCache;
+	}
+	
+	/**
+	 * @return The pool of off-heap buffers that is used to stage the pixel data of uploads
+	 */
+	public StagingBufferPool getStagingPool() {
+		return stagingPool;
+	}
+	
+	/**
+	 * @return The number of loadTexture calls that reused the texture of an earlier call with the same path
+	 */
+	public long getPathHits() {
+		return pathHits;
+	}
+	
+	/**
+	 * @return The number of loadTexture calls that reused an earlier texture with exactly the same pixels
+	 */
+	public long getContentHits() {
+		return contentHits;
+	}
+	
+	/**
+	 * @return The number of loadTexture calls that needed to upload a new texture
+	 */
+	public long getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * @return The fraction of the loadTexture calls that could reuse an existing texture
+	 */
+	public double getHitRate() {
+		long hits = pathHits + contentHits;
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+	
+	/**
+	 * @return The number of bytes of texture data that didn't need to be uploaded thanks to the reuse
+	 */
+	public long getBytesSaved() {
+		return bytesSaved;
+	}
+	
+	/**
+	 * @return The number of shared textures that were deleted because they were no longer referenced
+	 */
+	public long getReleasedCount() {
+		return releasedCount;
+	}
+	
 	public void clean(){
+		tileCache.clear();
+		stagingPool.trim();
+		texturesByPath.clear();
+		texturesByHash.clear();
+		references.clear();
+		dynamicTextures.clear();
+		if (pixelBuffers != null) {
+			GL15.glDeleteBuffers(pixelBuffers);
+			pixelBuffers = null;
+		}
 		for(int texture : textures)
-			GL11.glDeleteTextures(texture);
+			deleteTextureID(texture);
+		textures.clear();
+		opaqueTextures.clear();
+		variantSelector.clear();
+		textureMemory = 0;
+	}
+	
+	private class TileUploader implements TileCache.Uploader {
+
+		@Override
+		public int upload(TiledGuiTexture texture, int tileX, int tileY) {
+			BufferedImage source = texture.getSource();
+			int tileSize = texture.getTileSize();
+			int minX = tileX * tileSize;
+			int minY = tileY * tileSize;
+			int width = Math.min(tileSize, source.getWidth() - minX);
+			int height = Math.min(tileSize, source.getHeight() - minY);
+			BufferedImage tile = new BufferedImage(tileSize, tileSize, source.getTransparency() == BufferedImage.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = tile.createGraphics();
+			g.drawImage(source.getSubimage(minX, minY, width, height), 0, 0, null);
+			g.dispose();
+			return uploadTexture(tile, false);
+		}
+
+		@Override
+		public long getTileBytes(TiledGuiTexture texture) {
+			int tileSize = texture.getTileSize();
+			return tileSize * tileSize * (texture.getSource().getTransparency() == BufferedImage.OPAQUE ? 3 : 4);
+		}
+
+		@Override
+		public void delete(int textureID, long bytes) {
+			deleteTextureID(textureID);
+			textures.remove((Integer) textureID);
+			opaqueTextures.clear(textureID);
+			textureMemory -= bytes;
+		}
+	}
+	
+	/**
+	 * An uploaded texture that can be used by multiple GuiTextures
+	 */
+	private static class SharedTexture {
+		
+		private final int textureID;
+		private final int width;
+		private final int height;
+		private final int sourceWidth;
+		private final int sourceHeight;
+		private final long hash;
+		private final long bytes;
+		
+		private WeakReference<GuiTexture> fullTexture;
+		private int references;
+		
+		private SharedTexture(int textureID, int width, int height, int sourceWidth, int sourceHeight, long hash, long bytes) {
+			this.textureID = textureID;
+			this.width = width;
+			this.height = height;
+			this.sourceWidth = sourceWidth;
+			this.sourceHeight = sourceHeight;
+			this.hash = hash;
+			this.bytes = bytes;
+		}
+	}
+	
+	private static class TextureReference extends WeakReference<GuiTexture> {
+		
+		private final SharedTexture shared;
+		
+		private TextureReference(GuiTexture texture, SharedTexture shared, ReferenceQueue<GuiTexture> queue) {
+			super(texture, queue);
+			this.shared = shared;
+		}
+	}
+	
+	public static enum MipmapMode {
+		
+		/**
+		 * Textures don't get mipmaps
+		 */
+		NONE,
+		
+		/**
+		 * The mipmaps are generated by OpenGL with glGenerateMipmap
+		 */
+		GENERATE,
+		
+		/**
+		 * The mipmaps are generated on the CPU with the box filter of the MipmapGenerator
+		 */
+		BOX,
+		
+		/**
+		 * The mipmaps are generated on the CPU with the Lanczos filter of the MipmapGenerator
+		 */
+		LANCZOS
 	}
-}
\ No newline at end of file
+}
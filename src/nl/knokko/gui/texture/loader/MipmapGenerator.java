@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Generates the mipmap levels of ARGB images on the CPU. Every level is half as wide and half as high as the
+ * previous level (but at least 1 pixel), until the level of 1x1 pixels is reached. The color channels are
+ * weighted by their alpha, so fully transparent pixels don't darken the edges of the opaque parts.
+ * 
+ * The rows of every level are computed in parallel on the given ForkJoinPool. This class doesn't use OpenGL.
+ * @author knokko
+ *
+ */
+public class MipmapGenerator {
+	
+	private static final int ROWS_PER_TASK = 16;
+	
+	/**
+	 * The weights of the 8 source pixels that contribute to a pixel of the next level when the Lanczos filter is
+	 * used. Because the scale is always 2, the weights are the same for every pixel.
+	 */
+	private static final float[] LANCZOS_WEIGHTS = computeLanczosWeights();
+	
+	private static float[] computeLanczosWeights() {
+		float[] weights = new float[8];
+		float total = 0;
+		for (int index = 0; index < 8; index++) {
+			// The distance between the source pixel and the center of the destination pixel, in destination pixels
+			double distance = (index - 3.5) / 2;
+			weights[index] = (float) (sinc(distance) * sinc(distance / 2));
+			total += weights[index];
+		}
+		for (int index = 0; index < 8; index++)
+			weights[index] /= total;
+		return weights;
+	}
+	
+	private static double sinc(double x) {
+		if (x == 0)
+			return 1;
+		return Math.sin(Math.PI * x) / (Math.PI * x);
+	}
+	
+	public static enum Filter {
+		
+		/**
+		 * Every pixel is the average of the 2x2 pixels of the previous level. This is fast, but a bit blurry.
+		 */
+		BOX,
+		
+		/**
+		 * Every pixel is computed from the 8x8 pixels around it using a Lanczos filter with 2 lobes. This keeps
+		 * the small levels sharper.
+		 */
+		LANCZOS
+	}
+	
+	/**
+	 * @return The number of levels (including the original image) for an image of the given size
+	 */
+	public static int getLevelCount(int width, int height) {
+		return 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+	}
+	
+	/**
+	 * Generates all levels of the given image.
+	 * @param pixels The ARGB pixels of the image, row by row
+	 * @param width The width of the image
+	 * @param height The height of the image
+	 * @param filter The filter to use
+	 * @param pool The pool to compute the rows on
+	 * @return An array with the pixels of every level. The first element is the given pixel array.
+	 */
+	public static int[][] generate(int[] pixels, int width, int height, Filter filter, ForkJoinPool pool) {
+		int[][] levels = new int[getLevelCount(width, height)][];
+		levels[0] = pixels;
+		for (int level = 1; level < levels.length; level++) {
+			levels[level] = downscale(levels[level - 1], width, height, filter, pool);
+			width = Math.max(1, width / 2);
+			height = Math.max(1, height / 2);
+		}
+		return levels;
+	}
+	
+	/**
+	 * Computes the next level of the given image.
+	 * @return The ARGB pixels of the next level, which has a width of max(1, width / 2) and a height of
+	 * max(1, height / 2)
+	 */
+	public static int[] downscale(int[] pixels, int width, int height, Filter filter, ForkJoinPool pool) {
+		int[] result = new int[Math.max(1, width / 2) * Math.max(1, height / 2)];
+		pool.invoke(new RowTask(pixels, width, height, result, filter, 0, Math.max(1, height / 2)));
+		return result;
+	}
+	
+	private static int clampByte(float value) {
+		int rounded = Math.round(value);
+		return rounded < 0 ? 0 : rounded > 255 ? 255 : rounded;
+	}
+	
+	private static void boxRow(int[] source, int width, int height, int[] dest, int y) {
+		int destWidth = Math.max(1, width / 2);
+		int minY = 2 * y;
+		int maxY = Math.min(minY + 1, height - 1);
+		for (int x = 0; x < destWidth; x++) {
+			int minX = 2 * x;
+			int maxX = Math.min(minX + 1, width - 1);
+			int alpha = 0, red = 0, green = 0, blue = 0, count = 0;
+			for (int sy = minY; sy <= maxY; sy++) {
+				for (int sx = minX; sx <= maxX; sx++) {
+					int argb = source[sx + sy * width];
+					int a = argb >>> 24;
+					alpha += a;
+					red += a * (argb >> 16 & 0xFF);
+					green += a * (argb >> 8 & 0xFF);
+					blue += a * (argb & 0xFF);
+					count++;
+				}
+			}
+			if (alpha == 0)
+				dest[x + y * destWidth] = 0;
+			else
+				dest[x + y * destWidth] = (alpha + count / 2) / count << 24 | (red + alpha / 2) / alpha << 16 | (green + alpha / 2) / alpha << 8 | (blue + alpha / 2) / alpha;
+		}
+	}
+	
+	private static void lanczosRow(int[] source, int width, int height, int[] dest, int y) {
+		int destWidth = Math.max(1, width / 2);
+		boolean scaleX = width > 1;
+		boolean scaleY = height > 1;
+		for (int x = 0; x < destWidth; x++) {
+			float alpha = 0, red = 0, green = 0, blue = 0;
+			for (int ty = 0; ty < (scaleY ? 8 : 1); ty++) {
+				int sy = scaleY ? Math.max(0, Math.min(height - 1, 2 * y - 3 + ty)) : y;
+				float weightY = scaleY ? LANCZOS_WEIGHTS[ty] : 1;
+				for (int tx = 0; tx < (scaleX ? 8 : 1); tx++) {
+					int sx = scaleX ? Math.max(0, Math.min(width - 1, 2 * x - 3 + tx)) : x;
+					float weight = weightY * (scaleX ? LANCZOS_WEIGHTS[tx] : 1);
+					int argb = source[sx + sy * width];
+					float a = weight * (argb >>> 24);
+					alpha += a;
+					red += a * (argb >> 16 & 0xFF);
+					green += a * (argb >> 8 & 0xFF);
+					blue += a * (argb & 0xFF);
+				}
+			}
+			if (alpha <= 0)
+				dest[x + y * destWidth] = 0;
+			else
+				dest[x + y * destWidth] = clampByte(alpha) << 24 | clampByte(red / alpha) << 16 | clampByte(green / alpha) << 8 | clampByte(blue / alpha);
+		}
+	}
+	
+	private static class RowTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		
+		private final int[] source;
+		private final int width;
+		private final int height;
+		private final int[] dest;
+		private final Filter filter;
+		private final int minY;
+		private final int boundY;
+		
+		private RowTask(int[] source, int width, int height, int[] dest, Filter filter, int minY, int boundY) {
+			this.source = source;
+			this.width = width;
+			this.height = height;
+			this.dest = dest;
+			this.filter = filter;
+			this.minY = minY;
+			this.boundY = boundY;
+		}
+
+		@Override
+		protected void compute() {
+			if (boundY - minY > ROWS_PER_TASK) {
+				int middle = (minY + boundY) / 2;
+				invokeAll(new RowTask(source, width, height, dest, filter, minY, middle), new RowTask(source, width, height, dest, filter, middle, boundY));
+			} else {
+				for (int y = minY; y < boundY; y++) {
+					if (filter == Filter.BOX)
+						boxRow(source, width, height, dest, y);
+					else
+						lanczosRow(source, width, height, dest, y);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+/**
+ * Converts rows of ARGB pixels (the format of BufferedImage.getRGB) to the formats that are uploaded to OpenGL.
+ * Every method processes a whole row at once with a simple counted loop over primitive arrays, which the JIT
+ * compiler can unroll and vectorize.
+ * @author knokko
+ *
+ */
+public class PixelKernels {
+	
+	/**
+	 * Multiplies the color channels of a single ARGB pixel by its alpha.
+	 */
+	public static int premultiply(int argb) {
+		int alpha = argb >>> 24;
+		if (alpha == 0xFF)
+			return argb;
+		
+		// round(x * alpha / 255) is computed exactly as (t + (t >> 8)) >> 8 with t = x * alpha + 128
+		int red = (argb >> 16 & 0xFF) * alpha + 128;
+		int green = (argb >> 8 & 0xFF) * alpha + 128;
+		int blue = (argb & 0xFF) * alpha + 128;
+		return alpha << 24 | (red + (red >> 8)) >> 8 << 16 | (green + (green >> 8)) >> 8 << 8 | (blue + (blue >> 8)) >> 8;
+	}
+	
+	/**
+	 * Premultiplies a row of ARGB pixels.
+	 * @param source The array to read the pixels from
+	 * @param sourceOffset The index of the first pixel in source
+	 * @param dest The array to store the premultiplied pixels in, which can be the same as source
+	 * @param destOffset The index in dest where the first pixel should be stored
+	 * @param length The number of pixels in the row
+	 */
+	public static void premultiplyRow(int[] source, int sourceOffset, int[] dest, int destOffset, int length) {
+		for (int index = 0; index < length; index++)
+			dest[destOffset + index] = premultiply(source[sourceOffset + index]);
+	}
+	
+	/**
+	 * Converts a row of ARGB pixels to RGBA bytes.
+	 * @param premultiply true if the color channels should be multiplied by the alpha
+	 */
+	public static void toRGBA(int[] source, int sourceOffset, byte[] dest, int destOffset, int length, boolean premultiply) {
+		for (int index = 0; index < length; index++) {
+			int argb = source[sourceOffset + index];
+			if (premultiply)
+				argb = premultiply(argb);
+			int offset = destOffset + 4 * index;
+			dest[offset] = (byte) (argb >> 16);
+			dest[offset + 1] = (byte) (argb >> 8);
+			dest[offset + 2] = (byte) argb;
+			dest[offset + 3] = (byte) (argb >> 24);
+		}
+	}
+	
+	/**
+	 * Converts a row of ARGB pixels to RGB bytes, ignoring the alpha channel.
+	 */
+	public static void toRGB(int[] source, int sourceOffset, byte[] dest, int destOffset, int length) {
+		for (int index = 0; index < length; index++) {
+			int argb = source[sourceOffset + index];
+			int offset = destOffset + 3 * index;
+			dest[offset] = (byte) (argb >> 16);
+			dest[offset + 1] = (byte) (argb >> 8);
+			dest[offset + 2] = (byte) argb;
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A simple format for pixel data that is already in the layout OpenGL expects, so it can be uploaded without
+ * decoding or converting it. A raw texture consists of a 16 byte header followed by the pixels:
+ * <ul>
+ * <li>The 4 magic bytes 'G', 'L', 'R', 'T'</li>
+ * <li>The width as big endian int</li>
+ * <li>The height as big endian int</li>
+ * <li>The format as big endian int: FORMAT_RGB or FORMAT_RGBA</li>
+ * <li>The rows of pixels from top to bottom, without padding, 3 (RGB) or 4 (RGBA) bytes per pixel. The alpha
+ * is not premultiplied.</li>
+ * </ul>
+ * Assets can be converted to this format ahead of time with encode.
+ * @author knokko
+ *
+ */
+public class RawTexture {
+	
+	public static final int MAGIC = 'G' << 24 | 'L' << 16 | 'R' << 8 | 'T';
+	public static final int HEADER_SIZE = 16;
+	
+	public static final int FORMAT_RGB = 0;
+	public static final int FORMAT_RGBA = 1;
+	
+	/**
+	 * @return true if the remaining bytes of the given buffer start with the magic bytes of a raw texture
+	 */
+	public static boolean isRaw(ByteBuffer data) {
+		return data.remaining() >= HEADER_SIZE && getInt(data, data.position()) == MAGIC;
+	}
+	
+	// This doesn't depend on the byte order of the buffer, which shouldn't be changed by this class
+	private static int getInt(ByteBuffer data, int index) {
+		return (data.get(index) & 0xFF) << 24 | (data.get(index + 1) & 0xFF) << 16 | (data.get(index + 2) & 0xFF) << 8 | (data.get(index + 3) & 0xFF);
+	}
+	
+	/**
+	 * Reads the header of the raw texture in the remaining bytes of the given buffer. The position of the buffer
+	 * is not changed.
+	 * @throws IOException If the header is invalid or the buffer doesn't contain all pixels
+	 */
+	public static RawTexture read(ByteBuffer data) throws IOException {
+		if (!isRaw(data))
+			throw new IOException("Not a raw texture");
+		int position = data.position();
+		int width = getInt(data, position + 4);
+		int height = getInt(data, position + 8);
+		int format = getInt(data, position + 12);
+		if (width <= 0 || height <= 0)
+			throw new IOException("Invalid size " + width + "x" + height);
+		if (format != FORMAT_RGB && format != FORMAT_RGBA)
+			throw new IOException("Unknown format " + format);
+		
+		// The size is computed as long first, because the int computed by getPixelBytes could overflow
+		long pixelBytes = (long) width * height * (format == FORMAT_RGBA ? 4 : 3);
+		if (pixelBytes > Integer.MAX_VALUE)
+			throw new IOException("The pixels of " + width + "x" + height + " need " + pixelBytes + " bytes, which is too large");
+		RawTexture texture = new RawTexture(width, height, format);
+		if (data.remaining() - HEADER_SIZE < pixelBytes)
+			throw new IOException("Expected " + pixelBytes + " bytes of pixels, but only " + (data.remaining() - HEADER_SIZE) + " are available");
+		return texture;
+	}
+	
+	/**
+	 * Converts the given image to a raw texture, including the header. Opaque images are stored as RGB, all
+	 * others as RGBA.
+	 */
+	public static byte[] encode(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		boolean alpha = image.getTransparency() != BufferedImage.OPAQUE;
+		int channels = alpha ? 4 : 3;
+		byte[] result = new byte[HEADER_SIZE + width * height * channels];
+		ByteBuffer header = ByteBuffer.wrap(result);
+		header.putInt(MAGIC);
+		header.putInt(width);
+		header.putInt(height);
+		header.putInt(alpha ? FORMAT_RGBA : FORMAT_RGB);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			image.getRGB(0, y, width, 1, row, 0, width);
+			int offset = HEADER_SIZE + y * width * channels;
+			if (alpha)
+				PixelKernels.toRGBA(row, 0, result, offset, width, false);
+			else
+				PixelKernels.toRGB(row, 0, result, offset, width);
+		}
+		return result;
+	}
+	
+	private final int width;
+	private final int height;
+	private final int format;
+	
+	private RawTexture(int width, int height, int format) {
+		this.width = width;
+		this.height = height;
+		this.format = format;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public int getFormat() {
+		return format;
+	}
+	
+	public boolean hasAlpha() {
+		return format == FORMAT_RGBA;
+	}
+	
+	/**
+	 * @return The number of bytes of the pixels, without the header
+	 */
+	public int getPixelBytes() {
+		return width * height * (hasAlpha() ? 4 : 3);
+	}
+}
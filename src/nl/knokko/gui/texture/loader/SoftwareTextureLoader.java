@@ -0,0 +1,167 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import nl.knokko.gui.texture.GLGuiTexture;
+import nl.knokko.gui.texture.GLPartGuiTexture;
+import nl.knokko.gui.texture.GuiTexture;
+
+/**
+ * A GuiTextureLoader that keeps the pixels of its textures in memory instead of uploading them to OpenGL. It
+ * pads the images and computes the texture coordinates in exactly the same way as the GLGuiTextureLoader, so the
+ * textures it creates can be rendered by the SoftwareGuiRenderer without any differences.
+ * @author knokko
+ *
+ */
+public class SoftwareTextureLoader implements GuiTextureLoader {
+	
+	/**
+	 * The pixels of the texture with id i are at index i - 1, just like OpenGL, 0 is never used as texture id.
+	 */
+	private final List<int[]> pixels;
+	private final List<int[]> sizes;
+	private final BitSet opaqueTextures;
+	
+	private PrintStream errorOutput;
+	
+	public SoftwareTextureLoader() {
+		pixels = new ArrayList<int[]>();
+		sizes = new ArrayList<int[]>();
+		opaqueTextures = new BitSet();
+		errorOutput = System.out;
+	}
+	
+	private synchronized int storeTexture(BufferedImage source) {
+		int width = source.getWidth();
+		int height = source.getHeight();
+		int[] argb = source.getRGB(0, 0, width, height, null, 0, width);
+		boolean allowAlpha = source.getTransparency() != BufferedImage.OPAQUE;
+		if (!allowAlpha)
+			for (int index = 0; index < argb.length; index++)
+				argb[index] |= 0xFF000000;
+		pixels.add(argb);
+		sizes.add(new int[] {width, height});
+		int textureID = pixels.size();
+		if (!allowAlpha)
+			opaqueTextures.set(textureID);
+		return textureID;
+	}
+
+	@Override
+	public GuiTexture loadTexture(BufferedImage source, int minX, int minY, int maxX, int maxY) {
+		if (GLGuiTextureLoader.isPowerOf2(source.getWidth()) && GLGuiTextureLoader.isPowerOf2(source.getHeight())) {
+			int width = source.getWidth();
+			int height = source.getHeight();
+			int textureID = storeTexture(source);
+			return new GLPartGuiTexture(textureID, (float) minX / width, (float) minY / height, (float) maxX / width, (float) maxY / height, width, height);
+		} else {
+			return loadTexture(pad(source), minX, minY, maxX, maxY);
+		}
+	}
+
+	@Override
+	public GuiTexture loadTexture(BufferedImage source) {
+		if (GLGuiTextureLoader.isPowerOf2(source.getWidth()) && GLGuiTextureLoader.isPowerOf2(source.getHeight())) {
+			int textureID = storeTexture(source);
+			return new GLGuiTexture(textureID, source.getWidth(), source.getHeight());
+		} else {
+			return loadTexture(pad(source), 0, 0, source.getWidth() - 1, source.getHeight() - 1);
+		}
+	}
+	
+	private static BufferedImage pad(BufferedImage source) {
+		BufferedImage image2 = new BufferedImage(GLGuiTextureLoader.next2Power(source.getWidth()), GLGuiTextureLoader.next2Power(source.getHeight()), source.getType());
+		Graphics2D g = image2.createGraphics();
+		g.drawImage(source, 0, 0, null);
+		g.dispose();
+		return image2;
+	}
+
+	@Override
+	public GuiTexture loadTexture(String texturePath, int minX, int minY, int maxX, int maxY) {
+		try {
+			return loadTexture(readImage(texturePath), minX, minY, maxX, maxY);
+		} catch (IOException e) {
+			errorOutput.println("Can't load texture '" + texturePath + "': " + e.getMessage());
+			e.printStackTrace(errorOutput);
+			return null;
+		}
+	}
+
+	@Override
+	public GuiTexture loadTexture(String texturePath) {
+		try {
+			return loadTexture(readImage(texturePath));
+		} catch (IOException e) {
+			errorOutput.println("Can't load texture '" + texturePath + "': " + e.getMessage());
+			e.printStackTrace(errorOutput);
+			return null;
+		}
+	}
+	
+	private static BufferedImage readImage(String texturePath) throws IOException {
+		URL resource = SoftwareTextureLoader.class.getClassLoader().getResource(texturePath);
+		if (resource == null) {
+			throw new IOException("Can't find texture " + texturePath);
+		}
+		return ImageIO.read(resource);
+	}
+
+	@Override
+	public GuiTextureLoader setErrorOutput(PrintStream output) {
+		errorOutput = output;
+		return this;
+	}
+	
+	/**
+	 * @param textureID The id of a texture that was created by this loader
+	 * @return The ARGB pixels of the texture, row by row, starting with the upper row
+	 */
+	public synchronized int[] getPixels(int textureID) {
+		return pixels.get(textureID - 1);
+	}
+	
+	public synchronized int getWidth(int textureID) {
+		return sizes.get(textureID - 1)[0];
+	}
+	
+	public synchronized int getHeight(int textureID) {
+		return sizes.get(textureID - 1)[1];
+	}
+	
+	public synchronized boolean isOpaque(int textureID) {
+		return textureID >= 0 && opaqueTextures.get(textureID);
+	}
+}
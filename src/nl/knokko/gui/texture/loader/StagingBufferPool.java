@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+import org.lwjgl.system.MemoryUtil;
+
+/**
+ * A pool of off-heap buffers that are used to stage pixel data before it is uploaded to OpenGL. The buffers are
+ * allocated and freed explicitly with MemoryUtil, so they don't stay resident until the garbage collector
+ * decides to run. Every buffer size is rounded up to a power of 2 so that released buffers can be reused for
+ * uploads of a similar size.
+ * 
+ * The number of bytes that is acquired, but not yet released, is limited. If acquiring a buffer would exceed the
+ * limit, the acquiring thread waits until other threads release their buffers. A single buffer that is larger
+ * than the limit is still allowed when no other buffer is in use.
+ * @author knokko
+ *
+ */
+public class StagingBufferPool {
+	
+	private static final int MIN_SIZE_CLASS = 12;
+	
+	private final ArrayDeque<ByteBuffer>[] freeBuffers;
+	private final long maxInFlightBytes;
+	private final long maxPooledBytes;
+	
+	private long inFlightBytes;
+	private long pooledBytes;
+	
+	private long peakInFlightBytes;
+	private long peakOffHeapBytes;
+	private long allocations;
+	private long reuses;
+
+	/**
+	 * @param maxInFlightBytes The maximum number of bytes that can be acquired at the same time
+	 * @param maxPooledBytes The maximum number of bytes that is kept for reuse after the buffers have been 
+	 * released. Buffers that don't fit are freed immediately.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public StagingBufferPool(long maxInFlightBytes, long maxPooledBytes) {
+		this.freeBuffers = new ArrayDeque[32];
+		for (int index = 0; index < freeBuffers.length; index++)
+			freeBuffers[index] = new ArrayDeque<ByteBuffer>(2);
+		this.maxInFlightBytes = maxInFlightBytes;
+		this.maxPooledBytes = maxPooledBytes;
+	}
+	
+	private static int sizeClass(int bytes) {
+		return Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(bytes - 1));
+	}
+	
+	/**
+	 * Acquires a buffer with at least the given capacity. Its position will be 0 and its limit will be the
+	 * requested number of bytes. The buffer must be given back with release once it is no longer needed.
+	 * A thread should release its buffer before it acquires the next one, because it could otherwise wait
+	 * for itself.
+	 * @param bytes The number of bytes that is needed
+	 * @return a direct buffer in native byte order
+	 */
+	public synchronized ByteBuffer acquire(int bytes) {
+		int sizeClass = sizeClass(bytes);
+		long capacity = 1L << sizeClass;
+		while (inFlightBytes > 0 && inFlightBytes + capacity > maxInFlightBytes) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for a staging buffer", e);
+			}
+		}
+		ByteBuffer buffer = freeBuffers[sizeClass].poll();
+		if (buffer == null) {
+			buffer = MemoryUtil.memAlloc((int) capacity).order(ByteOrder.nativeOrder());
+			allocations++;
+		} else {
+			pooledBytes -= capacity;
+			reuses++;
+		}
+		inFlightBytes += capacity;
+		peakInFlightBytes = Math.max(peakInFlightBytes, inFlightBytes);
+		peakOffHeapBytes = Math.max(peakOffHeapBytes, inFlightBytes + pooledBytes);
+		buffer.clear();
+		buffer.limit(bytes);
+		return buffer;
+	}
+	
+	/**
+	 * Gives a buffer that was acquired from this pool back.
+	 */
+	public synchronized void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		inFlightBytes -= capacity;
+		if (pooledBytes + capacity <= maxPooledBytes) {
+			freeBuffers[sizeClass(capacity)].push(buffer);
+			pooledBytes += capacity;
+		} else {
+			MemoryUtil.memFree(buffer);
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * Frees all buffers that are kept for reuse. Buffers that are currently acquired are not affected.
+	 */
+	public synchronized void trim() {
+		for (ArrayDeque<ByteBuffer> buffers : freeBuffers) {
+			ByteBuffer buffer;
+			while ((buffer = buffers.poll()) != null)
+				MemoryUtil.memFree(buffer);
+		}
+		pooledBytes = 0;
+	}
+	
+	/**
+	 * @return The number of off-heap bytes that is currently allocated by this pool, including the buffers that
+	 * are kept for reuse
+	 */
+	public synchronized long getCurrentOffHeapBytes() {
+		return inFlightBytes + pooledBytes;
+	}
+	
+	public synchronized long getPeakOffHeapBytes() {
+		return peakOffHeapBytes;
+	}
+	
+	public synchronized long getInFlightBytes() {
+		return inFlightBytes;
+	}
+	
+	public synchronized long getPeakInFlightBytes() {
+		return peakInFlightBytes;
+	}
+	
+	public synchronized long getPooledBytes() {
+		return pooledBytes;
+	}
+	
+	public synchronized long getAllocations() {
+		return allocations;
+	}
+	
+	public synchronized long getReuses() {
+		return reuses;
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Chooses the base mipmap level of every mipmapped texture from the sizes at which it is drawn. When a texture
+ * is drawn far below its native size during a number of consecutive frames, the larger levels are skipped so
+ * that sampling touches less texture memory. As soon as the texture is drawn larger again, a larger level is
+ * selected immediately to avoid blurry frames.
+ * 
+ * This class doesn't use OpenGL: the chosen levels are passed to a LevelListener.
+ * @author knokko
+ *
+ */
+public class TextureVariantSelector {
+	
+	private final Map<Integer,Variant> variants;
+	private final LevelListener listener;
+	
+	private int framesBeforeDownscale;
+	private int levelBias;
+	private long levelChanges;
+	
+	/**
+	 * @param listener The listener that applies the chosen base levels
+	 * @param framesBeforeDownscale The number of consecutive frames a texture must be drawn small enough before 
+	 * a smaller level is selected
+	 */
+	public TextureVariantSelector(LevelListener listener, int framesBeforeDownscale) {
+		this.variants = new HashMap<Integer,Variant>();
+		this.listener = listener;
+		this.framesBeforeDownscale = framesBeforeDownscale;
+	}
+	
+	/**
+	 * Starts tracking the texture with the given id.
+	 * @param textureID The id of the texture
+	 * @param levels The number of mipmap levels of the texture
+	 */
+	public void register(int textureID, int levels) {
+		Variant variant = new Variant(levels);
+		variants.put(textureID, variant);
+		if (variant.getAppliedLevel(levelBias) != 0)
+			listener.setBaseLevel(textureID, variant.getAppliedLevel(levelBias));
+	}
+	
+	public void unregister(int textureID) {
+		variants.remove(textureID);
+	}
+	
+	public void clear() {
+		variants.clear();
+	}
+	
+	public boolean isEmpty() {
+		return variants.isEmpty();
+	}
+	
+	/**
+	 * Should be called whenever a texture is drawn.
+	 * @param textureID The id of the texture
+	 * @param texels The number of texels of the texture that were drawn horizontally or vertically
+	 * @param pixels The number of pixels those texels were drawn on
+	 */
+	public void recordDraw(int textureID, float texels, float pixels) {
+		Variant variant = variants.get(textureID);
+		if (variant != null && texels > 0)
+			variant.frameScale = Math.max(variant.frameScale, Math.abs(pixels) / texels);
+	}
+	
+	/**
+	 * Chooses the new base levels from the draws of this frame and starts the next frame.
+	 */
+	public void endFrame() {
+		for (Map.Entry<Integer,Variant> entry : variants.entrySet()) {
+			Variant variant = entry.getValue();
+			if (variant.frameScale < 0)
+				continue;
+			int wanted = wantedLevel(variant.frameScale, variant.levels);
+			variant.frameScale = -1;
+			if (wanted > variant.level) {
+				variant.candidate = variant.stableFrames == 0 ? wanted : Math.min(variant.candidate, wanted);
+				if (++variant.stableFrames >= framesBeforeDownscale)
+					setLevel(entry.getKey(), variant, variant.candidate);
+			} else {
+				if (wanted < variant.level)
+					setLevel(entry.getKey(), variant, wanted);
+				variant.stableFrames = 0;
+			}
+		}
+	}
+	
+	private void setLevel(int textureID, Variant variant, int level) {
+		int oldLevel = variant.getAppliedLevel(levelBias);
+		variant.level = level;
+		variant.stableFrames = 0;
+		if (variant.getAppliedLevel(levelBias) != oldLevel) {
+			listener.setBaseLevel(textureID, variant.getAppliedLevel(levelBias));
+			levelChanges++;
+		}
+	}
+	
+	/**
+	 * Makes every texture use a level that is the given number of levels smaller than the level chosen from
+	 * its draws, as far as the texture has such levels. This is used to reduce the sampling cost when the
+	 * frames are too slow.
+	 * @param levelBias The number of levels to skip, 0 for normal quality
+	 */
+	public void setLevelBias(int levelBias) {
+		if (levelBias != this.levelBias) {
+			int oldBias = this.levelBias;
+			this.levelBias = levelBias;
+			for (Map.Entry<Integer,Variant> entry : variants.entrySet()) {
+				Variant variant = entry.getValue();
+				if (variant.getAppliedLevel(levelBias) != variant.getAppliedLevel(oldBias)) {
+					listener.setBaseLevel(entry.getKey(), variant.getAppliedLevel(levelBias));
+					levelChanges++;
+				}
+			}
+		}
+	}
+	
+	public int getLevelBias() {
+		return levelBias;
+	}
+	
+	/**
+	 * @param scale The number of screen pixels per texel
+	 * @param levels The number of mipmap levels
+	 * @return The largest level whose texels are still at least as small as the screen pixels
+	 */
+	static int wantedLevel(float scale, int levels) {
+		int level = 0;
+		while (level < levels - 1 && scale * (2 << level) <= 1)
+			level++;
+		return level;
+	}
+	
+	/**
+	 * @return The current base level of the given texture, including the level bias, or 0 if it is not tracked
+	 */
+	public int getBaseLevel(int textureID) {
+		Variant variant = variants.get(textureID);
+		return variant == null ? 0 : variant.getAppliedLevel(levelBias);
+	}
+	
+	public void setFramesBeforeDownscale(int frames) {
+		framesBeforeDownscale = frames;
+	}
+	
+	/**
+	 * @return The number of times a base level has been changed
+	 */
+	public long getLevelChanges() {
+		return levelChanges;
+	}
+	
+	private static class Variant {
+		
+		private final int levels;
+		
+		private int level;
+		private int candidate;
+		private int stableFrames;
+		private float frameScale = -1;
+		
+		private Variant(int levels) {
+			this.levels = levels;
+		}
+		
+		private int getAppliedLevel(int bias) {
+			return Math.min(levels - 1, level + bias);
+		}
+	}
+	
+	public static interface LevelListener {
+		
+		void setBaseLevel(int textureID, int level);
+	}
+}
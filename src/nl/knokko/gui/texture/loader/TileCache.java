@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.texture.loader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import nl.knokko.gui.texture.GLPartGuiTexture;
+import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.TiledGuiTexture;
+
+/**
+ * Keeps track of the tiles of TiledGuiTextures that are resident. Tiles are uploaded when they are needed and the
+ * least recently used tiles are evicted at the end of every frame until the resident tiles fit within the budget.
+ * Tiles that were used during the current frame are never evicted, so the budget can be exceeded temporarily
+ * when a lot of tiles are visible at the same time.
+ * 
+ * The actual uploading and deleting is done by an Uploader, so this class can also be used without OpenGL.
+ * @author knokko
+ *
+ */
+public class TileCache {
+	
+	private final Uploader uploader;
+	private final LinkedHashMap<Long,Tile> tiles;
+	
+	private long budget;
+	private long residentBytes;
+	private long frame;
+	
+	private long hits;
+	private long uploads;
+	private long evictions;
+	
+	/**
+	 * @param uploader The uploader that will create and delete the tile textures
+	 * @param budget The maximum number of bytes the resident tiles should use
+	 */
+	public TileCache(Uploader uploader, long budget) {
+		this.uploader = uploader;
+		this.budget = budget;
+		
+		// Access order makes the first entry the least recently used tile
+		this.tiles = new LinkedHashMap<Long,Tile>(64, 0.75f, true);
+	}
+	
+	public GuiTexture getTile(TiledGuiTexture texture, int tileX, int tileY) {
+		Long key = (long) texture.getSerial() << 32 | tileY * texture.getTilesX() + tileX;
+		Tile tile = tiles.get(key);
+		if (tile == null) {
+			int tileSize = texture.getTileSize();
+			int width = Math.min(tileSize, texture.getWidth() - tileX * tileSize);
+			int height = Math.min(tileSize, texture.getHeight() - tileY * tileSize);
+			int textureID = uploader.upload(texture, tileX, tileY);
+			long bytes = uploader.getTileBytes(texture);
+			tile = new Tile(new GLPartGuiTexture(textureID, 0, 0, (float) width / tileSize, (float) height / tileSize, tileSize, tileSize), bytes);
+			tiles.put(key, tile);
+			residentBytes += bytes;
+			uploads++;
+		} else {
+			hits++;
+		}
+		tile.lastFrame = frame;
+		return tile.texture;
+	}
+	
+	/**
+	 * Evicts the least recently used tiles that were not used during the current frame until the resident tiles
+	 * fit within the budget, and starts the next frame.
+	 */
+	public void endFrame() {
+		Iterator<Tile> iterator = tiles.values().iterator();
+		while (residentBytes > budget && iterator.hasNext()) {
+			Tile tile = iterator.next();
+			if (tile.lastFrame != frame) {
+				iterator.remove();
+				uploader.delete(tile.texture.getTextureID(), tile.bytes);
+				residentBytes -= tile.bytes;
+				evictions++;
+			}
+		}
+		frame++;
+	}
+	
+	/**
+	 * Evicts the least recently used tiles until the resident tiles use at most floor bytes, regardless of
+	 * whether they were used during the current frame. This should only be called between frames.
+	 * @param floor The number of bytes the resident tiles can keep using
+	 */
+	public void trim(long floor) {
+		Iterator<Tile> iterator = tiles.values().iterator();
+		while (residentBytes > floor && iterator.hasNext()) {
+			Tile tile = iterator.next();
+			iterator.remove();
+			uploader.delete(tile.texture.getTextureID(), tile.bytes);
+			residentBytes -= tile.bytes;
+			evictions++;
+		}
+	}
+	
+	/**
+	 * Deletes all resident tiles
+	 */
+	public void clear() {
+		for (Tile tile : tiles.values())
+			uploader.delete(tile.texture.getTextureID(), tile.bytes);
+		tiles.clear();
+		residentBytes = 0;
+	}
+	
+	public void setBudget(long budget) {
+		this.budget = budget;
+	}
+	
+	public long getBudget() {
+		return budget;
+	}
+	
+	public long getResidentBytes() {
+		return residentBytes;
+	}
+	
+	public int getResidentTiles() {
+		return tiles.size();
+	}
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	public long getUploads() {
+		return uploads;
+	}
+	
+	public long getEvictions() {
+		return evictions;
+	}
+	
+	private static class Tile {
+		
+		private final GuiTexture texture;
+		private final long bytes;
+		
+		private long lastFrame;
+		
+		private Tile(GuiTexture texture, long bytes) {
+			this.texture = texture;
+			this.bytes = bytes;
+		}
+	}
+	
+	public static interface Uploader {
+		
+		/**
+		 * Uploads the given tile as a texture of tileSize x tileSize pixels. If the tile is at the right or bottom
+		 * edge of the image, the part of the texture outside the image is undefined.
+		 * @return the texture id
+		 */
+		int upload(TiledGuiTexture texture, int tileX, int tileY);
+		
+		/**
+		 * @return The number of bytes a single tile of the given texture uses
+		 */
+		long getTileBytes(TiledGuiTexture texture);
+		
+		/**
+		 * Deletes the texture of a tile that was uploaded earlier
+		 * @param textureID The texture id that was returned by upload
+		 * @param bytes The number of bytes that was returned by getTileBytes for the tile
+		 */
+		void delete(int textureID, long bytes);
+	}
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.util;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.LineMetrics;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.loader.GuiTextureLoader;
+
+/**
+ * A CharBuilder whose rasterization step can run on other threads. The prepare method draws a character into
+ * an image without touching OpenGL, so it can be called while the OpenGL context is still being created. The
+ * prepared images are uploaded by uploadPrepared or, at the latest, the first time getTexture needs them.
+ * @author knokko
+ *
+ */
+public class GLCharBuilder extends CharBuilder {
+	
+	private final Map<Key,GuiTexture> textures = new HashMap<Key,GuiTexture>();
+	private final Map<Key,Glyph> prepared = new ConcurrentHashMap<Key,Glyph>();
+	private final BitSet glyphTextureIDs = new BitSet();
+	
+	private final GuiTextureLoader textureLoader;
+	
+	private long preparedHits;
+
+	public GLCharBuilder(GuiTextureLoader textureLoader) {
+		super(textureLoader);
+		this.textureLoader = textureLoader;
+	}
+	
+	@Override
+	public GuiTexture getTexture(char character, Color color, Font font) {
+		Key key = new Key(character, color, font);
+		GuiTexture texture = textures.get(key);
+		if (texture == null) {
+			Glyph glyph = prepared.remove(key);
+			if (glyph != null)
+				preparedHits++;
+			else
+				glyph = rasterize(character, color, font);
+			texture = upload(key, glyph);
+		}
+		return texture;
+	}
+	
+	private GuiTexture upload(Key key, Glyph glyph) {
+		GuiTexture texture = textureLoader.loadTexture(glyph.image, 0, 0, glyph.maxX, glyph.maxY);
+		textures.put(key, texture);
+		glyphTextureIDs.set(texture.getTextureID());
+		return texture;
+	}
+	
+	/**
+	 * Rasterizes the given character so that getTexture only needs to upload it. This method doesn't use
+	 * OpenGL and can be called from any thread.
+	 */
+	public void prepare(char character, Color color, Font font) {
+		Key key = new Key(character, color, font);
+		if (!prepared.containsKey(key))
+			prepared.put(key, rasterize(character, color, font));
+	}
+	
+	/**
+	 * Prepares all characters of the given string, see prepare(char, Color, Font).
+	 */
+	public void prepare(String characters, Color color, Font font) {
+		for (int index = 0; index < characters.length(); index++)
+			prepare(characters.charAt(index), color, font);
+	}
+	
+	/**
+	 * Uploads all characters that have been prepared, but not uploaded yet. This method must be called on the
+	 * thread that owns the OpenGL context.
+	 * @return the number of characters that were uploaded
+	 */
+	public int uploadPrepared() {
+		int count = 0;
+		Iterator<Map.Entry<Key,Glyph>> iterator = prepared.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<Key,Glyph> entry = iterator.next();
+			iterator.remove();
+			if (!textures.containsKey(entry.getKey())) {
+				upload(entry.getKey(), entry.getValue());
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Forgets all textures of this char builder. This should be called when the texture loader has been cleaned.
+	 */
+	public void clear() {
+		textures.clear();
+		prepared.clear();
+		glyphTextureIDs.clear();
+	}
+	
+	/**
+	 * Checks whether the given texture id was used for a character by this char builder. This is only used to
+	 * group the render timings, so it doesn't matter much that texture ids can be reused.
+	 */
+	public boolean isGlyphTexture(int textureID) {
+		return glyphTextureIDs.get(textureID);
+	}
+	
+	/**
+	 * @return The number of characters that have been prepared, but not uploaded yet
+	 */
+	public int getPreparedCount() {
+		return prepared.size();
+	}
+	
+	/**
+	 * @return The number of times getTexture could use a prepared character instead of rasterizing it
+	 */
+	public long getPreparedHits() {
+		return preparedHits;
+	}
+	
+	// This does the same as the rasterization of CharBuilder, which is private
+	private static Glyph rasterize(char character, Color color, Font font) {
+		BufferedImage image = new BufferedImage(font.getSize(), font.getSize() * 5 / 4, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setFont(font);
+		Rectangle2D bounds = font.getStringBounds(new char[] {character}, 0, 1, g.getFontRenderContext());
+		LineMetrics lm = font.getLineMetrics(new char[] {character}, 0, 1, g.getFontRenderContext());
+		int height = (int) Math.ceil(lm.getAscent() + lm.getDescent());
+		if (bounds.getWidth() > image.getWidth() || height > image.getHeight()) {
+			g.dispose();
+			if (bounds.getWidth() == 0 || height == 0)
+				return new Glyph(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), 1, 1);
+			image = new BufferedImage((int) Math.ceil(bounds.getWidth()), height, BufferedImage.TYPE_INT_RGB);
+			g = image.createGraphics();
+			g.setFont(font);
+		}
+		g.setColor(color);
+		g.drawString(Character.toString(character), 0, lm.getAscent());
+		g.dispose();
+		return new Glyph(image, (int) Math.ceil(bounds.getWidth()), height);
+	}
+	
+	private static class Glyph {
+		
+		private final BufferedImage image;
+		
+		private final int maxX;
+		private final int maxY;
+		
+		private Glyph(BufferedImage image, int maxX, int maxY) {
+			this.image = image;
+			this.maxX = maxX;
+			this.maxY = maxY;
+		}
+	}
+	
+	private static class Key {
+		
+		private final char character;
+		private final int rgba;
+		private final Font font;
+		
+		private Key(char character, Color color, Font font) {
+			this.character = character;
+			this.rgba = color.getRGB();
+			this.font = font;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			if (other instanceof Key) {
+				Key key = (Key) other;
+				return key.character == character && key.rgba == rgba && key.font.equals(font);
+			}
+			return false;
+		}
+		
+		@Override
+		public int hashCode() {
+			return character + rgba + font.hashCode();
+		}
+	}
+}
@@ -0,0 +1,115 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+/**
+ * Waits for the end of the frame slot of the run loop of a GLGuiContext. Normally, it simply sleeps until the
+ * deadline. In render-on-input mode, it waits for events instead and lets the context render as soon as input
+ * arrives, so the result of the input doesn't have to wait until the next iteration. This happens at most once
+ * per frame slot, so a stream of input can't make the context render more often than twice per iteration. The
+ * updates still happen once per iteration, so the update rate is not affected by the input.
+ * 
+ * The actual waiting is done by a Waiter, so this class can be used with a fake clock.
+ * @author knokko
+ *
+ */
+public class FramePacer {
+	
+	private final Waiter waiter;
+	
+	private Clock clock;
+	private boolean renderOnInput;
+	private boolean inputArrived;
+	
+	private long earlyRenders;
+	
+	public FramePacer(Clock clock, Waiter waiter) {
+		this.clock = clock;
+		this.waiter = waiter;
+	}
+	
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
+	public void setRenderOnInput(boolean renderOnInput) {
+		this.renderOnInput = renderOnInput;
+	}
+	
+	public boolean isRenderOnInput() {
+		return renderOnInput;
+	}
+	
+	/**
+	 * Should be called by the input callbacks when an event has been received
+	 */
+	public void signalInput() {
+		inputArrived = true;
+	}
+	
+	/**
+	 * Waits until the given deadline. In render-on-input mode, the given task will be run when the first input
+	 * arrives before the deadline. Input that arrives after that will be handled in the next iteration.
+	 * @param deadline The time (according to the clock) at which this method should return
+	 * @param renderTask The task that renders the result of new input
+	 */
+	public void waitUntil(long deadline, Runnable renderTask) {
+		long remaining = deadline - clock.nanoTime();
+		boolean rendered = false;
+		while (remaining > 0) {
+			if (!renderOnInput || rendered) {
+				waiter.sleep(remaining);
+				return;
+			}
+			inputArrived = false;
+			waiter.waitEvents(remaining);
+			if (inputArrived) {
+				renderTask.run();
+				earlyRenders++;
+				rendered = true;
+			}
+			remaining = deadline - clock.nanoTime();
+		}
+	}
+	
+	/**
+	 * @return The number of times input was rendered before the end of the frame slot
+	 */
+	public long getEarlyRenders() {
+		return earlyRenders;
+	}
+	
+	public static interface Waiter {
+		
+		/**
+		 * Sleeps for the given number of nanoseconds
+		 */
+		void sleep(long nanos);
+		
+		/**
+		 * Waits until events have been processed or the given number of nanoseconds has passed
+		 */
+		void waitEvents(long timeoutNanos);
+	}
+}
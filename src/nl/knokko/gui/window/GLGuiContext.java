@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+import java.awt.image.BufferedImage;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.system.MemoryUtil;
+
+import nl.knokko.gui.shader.GuiShader;
+import nl.knokko.gui.texture.GuiTexture;
+import nl.knokko.gui.texture.loader.GLGuiTextureLoader;
+import nl.knokko.gui.util.GLCharBuilder;
+
+/**
+ * A GLGuiContext is a group of GLGuiWindows that share their OpenGL objects. All windows of the same context
+ * use the same texture loader, char builder and shader, so every texture only needs to be loaded once. The run
+ * method of the context updates and renders all its windows in a single loop.
+ * 
+ * Every GLGuiWindow that is created without context gets its own context, so applications that only need 1 
+ * window don't need to use this class directly.
+ * 
+ * The work of the startup that doesn't need OpenGL is started on background threads in the constructor, see
+ * getStartup(). The startup timeline can be printed with printStartupReport.
+ * 
+ * When all windows are iconified (or unfocused, if enabled), the context trims its caches and runs its loop at
+ * the background fps. Everything that was released will be restored lazily when it is needed again.
+ * @author knokko
+ *
+ */
+public class GLGuiContext {
+	
+	public static final long DEFAULT_TRIM_FLOOR = 4 * 1024 * 1024;
+	public static final int DEFAULT_BACKGROUND_FPS = 4;
+	
+	private final GLGuiTextureLoader textureLoader;
+	private final GLCharBuilder charBuilder;
+	
+	private final UpdateScheduler scheduler;
+	
+	private final StartupTimeline timeline;
+	private final StartupOrchestrator startup;
+	
+	private final List<GLGuiWindow> windows;
+	private final Map<Integer,GuiTexture> colorMap;
+	
+	private GuiShader shader;
+	private GLGuiWindow currentWindow;
+	
+	private final FramePacer pacer;
+	private final OverloadController overload;
+	private long appliedOverloadChanges;
+	private final Runnable renderInputTask;
+	private Clock clock;
+	
+	private boolean running;
+	private boolean renderedFirstFrame;
+	private long iterations;
+	
+	private long trimFloor;
+	private int backgroundFps;
+	private boolean trimWhenUnfocused;
+	private boolean trimmed;
+	
+	private long trimCount;
+	private long memoryBeforeTrim;
+	private long memoryAfterTrim;
+	
+	public GLGuiContext() {
+		timeline = new StartupTimeline();
+		textureLoader = new GLGuiTextureLoader();
+		charBuilder = new GLCharBuilder(textureLoader);
+		startup = new StartupOrchestrator(textureLoader, charBuilder, timeline);
+		scheduler = new UpdateScheduler();
+		windows = new ArrayList<GLGuiWindow>(1);
+		colorMap = new HashMap<Integer,GuiTexture>();
+		trimFloor = DEFAULT_TRIM_FLOOR;
+		backgroundFps = DEFAULT_BACKGROUND_FPS;
+		clock = Clock.SYSTEM;
+		pacer = new FramePacer(clock, new FramePacer.Waiter() {
+
+			@Override
+			public void sleep(long nanos) {
+				try {
+					Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+				} catch (InterruptedException e) {
+					throw new RuntimeException("Unexpected interrupt", e);
+				}
+			}
+
+			@Override
+			public void waitEvents(long timeoutNanos) {
+				GLFW.glfwWaitEventsTimeout(timeoutNanos / 1e9);
+			}
+		});
+		overload = new OverloadController();
+		renderInputTask = () -> {
+			for (int index = 0; index < windows.size(); index++)
+				windows.get(index).renderInput();
+		};
+		timeline.mark("context created");
+	}
+	
+	private static void ensureOnMainThread() {
+		Thread current = Thread.currentThread();
+		if (!current.getName().equals("main")) {
+			throw new IllegalStateException("This method can only be called on the main thread!");
+		}
+	}
+	
+	/**
+	 * @return The id of a window whose OpenGL context should be shared with new windows, or NULL if no window
+	 * of this context is open
+	 */
+	long getShareWindowID() {
+		if (windows.isEmpty())
+			return MemoryUtil.NULL;
+		return windows.get(0).getWindowID();
+	}
+	
+	/**
+	 * Should be called right after the OpenGL capabilities of the window have been created
+	 */
+	void onOpen(GLGuiWindow window) {
+		windows.add(window);
+		currentWindow = window;
+		if (shader == null) {
+			shader = startup.createShader();
+			startup.flush();
+		}
+	}
+	
+	/**
+	 * Should be called right after a window of this context has rendered a frame
+	 */
+	void afterRender() {
+		if (!renderedFirstFrame) {
+			renderedFirstFrame = true;
+			timeline.mark("first frame");
+		}
+	}
+	
+	/**
+	 * Should be called when the given window is about to be destroyed, while its OpenGL context is current.
+	 * @return true if it was the last window of this context, in which case the shared OpenGL objects
+	 * have been deleted
+	 */
+	boolean onClose(GLGuiWindow window) {
+		windows.remove(window);
+		if (currentWindow == window)
+			currentWindow = null;
+		if (windows.isEmpty()) {
+			textureLoader.clean();
+			colorMap.clear();
+			charBuilder.clear();
+			shader.clean();
+			shader = null;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Should be called when a window of this context has been iconified, restored, focused or unfocused
+	 */
+	void onVisibilityChange() {
+		boolean hidden = !windows.isEmpty();
+		for (GLGuiWindow window : windows)
+			if (!window.isIconified() && (!trimWhenUnfocused || window.isFocused()))
+				hidden = false;
+		if (hidden && !trimmed)
+			trim();
+		else if (!hidden && trimmed)
+			trimmed = false;
+	}
+	
+	private boolean isIconified() {
+		for (GLGuiWindow window : windows)
+			if (!window.isIconified())
+				return false;
+		return true;
+	}
+	
+	/**
+	 * Releases all memory that can be restored lazily: the fill textures and characters that are cached by
+	 * this context and everything GLGuiTextureLoader.trim releases. Textures that are still used by components
+	 * stay alive. The others are deleted once they have been garbage collected. The resident tiles are reduced
+	 * to the trim floor.
+	 * 
+	 * This is called automatically when all windows are iconified, but can also be called manually. It must be
+	 * called between frames, while the OpenGL context is current.
+	 */
+	public void trim() {
+		memoryBeforeTrim = getResidentMemory();
+		colorMap.clear();
+		charBuilder.clear();
+		textureLoader.trim(trimFloor);
+		memoryAfterTrim = getResidentMemory();
+		trimmed = true;
+		trimCount++;
+	}
+	
+	/**
+	 * @return true if the caches have been trimmed and the windows are still hidden
+	 */
+	public boolean isTrimmed() {
+		return trimmed;
+	}
+	
+	/**
+	 * Sets the number of bytes that resident tiles can keep using when the caches are trimmed
+	 */
+	public void setTrimFloor(long trimFloor) {
+		this.trimFloor = trimFloor;
+	}
+	
+	public long getTrimFloor() {
+		return trimFloor;
+	}
+	
+	/**
+	 * Sets the number of iterations per second of the run loop while all windows are iconified
+	 * @throws IllegalArgumentException If backgroundFps is not positive
+	 */
+	public void setBackgroundFps(int backgroundFps) {
+		if (backgroundFps <= 0)
+			throw new IllegalArgumentException("The background fps must be positive, but is " + backgroundFps);
+		this.backgroundFps = backgroundFps;
+	}
+	
+	public int getBackgroundFps() {
+		return backgroundFps;
+	}
+	
+	/**
+	 * If enabled, the caches will also be trimmed when none of the windows has the focus. By default, this
+	 * only happens when all windows are iconified.
+	 */
+	public void setTrimWhenUnfocused(boolean trimWhenUnfocused) {
+		this.trimWhenUnfocused = trimWhenUnfocused;
+	}
+	
+	public long getTrimCount() {
+		return trimCount;
+	}
+	
+	/**
+	 * @return The resident memory right before the last trim, see getResidentMemory()
+	 */
+	public long getMemoryBeforeTrim() {
+		return memoryBeforeTrim;
+	}
+	
+	/**
+	 * @return The resident memory right after the last trim, see getResidentMemory(). Textures that were only
+	 * waiting for the garbage collector are not deleted yet at that point.
+	 */
+	public long getMemoryAfterTrim() {
+		return memoryAfterTrim;
+	}
+	
+	/**
+	 * @return The number of bytes of texture data and off-heap staging buffers that is shared by the windows
+	 * of this context
+	 */
+	public long getResidentMemory() {
+		return textureLoader.getTextureMemory() + textureLoader.getStagingPool().getCurrentOffHeapBytes();
+	}
+	
+	void makeCurrent(GLGuiWindow window) {
+		if (currentWindow != window) {
+			window.makeContextCurrent();
+			currentWindow = window;
+		}
+	}
+	
+	boolean isRunning() {
+		return running;
+	}
+	
+	/**
+	 * Updates and renders all open windows of this context about fps times per second until all of them have
+	 * been closed. Windows that should close will be closed by this method. Events are polled once per
+	 * iteration for all windows together. After the windows have been updated and rendered, the update scheduler
+	 * gets the chance to run incremental work. Iconified windows are updated, but not rendered. While all
+	 * windows are iconified, the loop runs at the background fps instead.
+	 * 
+	 * The time that is left at the end of an iteration is waited by the frame pacer. In render-on-input mode,
+	 * the windows are rendered again as soon as input arrives during that time.
+	 * @param fps The preferred frames/updates per second
+	 */
+	public void run(int fps) {
+		ensureOnMainThread();
+		running = true;
+		try {
+			while (!windows.isEmpty()) {
+				long startTime = clock.nanoTime();
+				
+				// The controller can also be changed via getOverloadController, so check it every iteration
+				if (overload.getChanges() != appliedOverloadChanges)
+					applyDegradations();
+				long delay = 1000000000 / (trimmed && isIconified() ? backgroundFps : fps);
+				GLFW.glfwPollEvents();
+				for (int index = 0; index < windows.size(); index++)
+					windows.get(index).runIteration();
+				scheduler.runFrame();
+				textureLoader.endFrame();
+				for (int index = windows.size() - 1; index >= 0; index--) {
+					GLGuiWindow window = windows.get(index);
+					if (window.shouldClose())
+						window.close();
+				}
+				iterations++;
+				overload.recordFrame(clock.nanoTime() - startTime, delay);
+				if (overload.getChanges() != appliedOverloadChanges)
+					applyDegradations();
+				if (!windows.isEmpty())
+					pacer.waitUntil(startTime + delay, renderInputTask);
+			}
+		} finally {
+			running = false;
+		}
+	}
+	
+	private void applyDegradations() {
+		appliedOverloadChanges = overload.getChanges();
+		textureLoader.getVariantSelector().setLevelBias(overload.isActive(OverloadController.Degradation.LOWER_TEXTURE_RESOLUTION) ? 1 : 0);
+		scheduler.setMinimumPriority(overload.isActive(OverloadController.Degradation.DEFER_NON_CRITICAL) ? 0 : Integer.MIN_VALUE);
+	}
+	
+	/**
+	 * @return The controller that degrades the quality of the windows of this context when the frames are too
+	 * slow. It is disabled by default.
+	 */
+	public OverloadController getOverloadController() {
+		return overload;
+	}
+	
+	/**
+	 * Enables or disables the overload controller. Disabling it restores full quality right away.
+	 */
+	public void setOverloadControl(boolean enabled) {
+		overload.setEnabled(enabled);
+		applyDegradations();
+	}
+	
+	/**
+	 * @return The number of iterations the run loop has completed
+	 */
+	long getIterations() {
+		return iterations;
+	}
+	
+	/**
+	 * Enables or disables render-on-input mode. When enabled, the run loop doesn't sleep until the next
+	 * iteration, but waits for events instead. When input arrives, the windows will be rendered right away so
+	 * the result of the input is presented without waiting for the rest of the frame slot.
+	 */
+	public void setRenderOnInput(boolean renderOnInput) {
+		pacer.setRenderOnInput(renderOnInput);
+	}
+	
+	public FramePacer getPacer() {
+		return pacer;
+	}
+	
+	/**
+	 * Sets the clock that is used by the run loop, the frame pacer and the latency trackers of the windows
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+		pacer.setClock(clock);
+		for (GLGuiWindow window : windows)
+			window.getLatencyTracker().setClock(clock);
+	}
+	
+	public Clock getClock() {
+		return clock;
+	}
+	
+	public GLGuiTextureLoader getTextureLoader() {
+		return textureLoader;
+	}
+	
+	public GLCharBuilder getCharBuilder() {
+		return charBuilder;
+	}
+	
+	/**
+	 * @return The scheduler that runs the incremental work of the components of the windows of this context
+	 */
+	public UpdateScheduler getScheduler() {
+		return scheduler;
+	}
+	
+	/**
+	 * @return The orchestrator that prepares textures and characters on background threads while the first
+	 * window is being opened
+	 */
+	public StartupOrchestrator getStartup() {
+		return startup;
+	}
+	
+	public StartupTimeline getStartupTimeline() {
+		return timeline;
+	}
+	
+	/**
+	 * Prints the time between the start of the process and every step of the startup of this context, until
+	 * the first frame has been rendered.
+	 * @param output The stream to print the report to
+	 */
+	public void printStartupReport(PrintStream output) {
+		timeline.printReport(output);
+		output.println("Prewarmed characters used: " + charBuilder.getPreparedHits() + ", still waiting: " + charBuilder.getPreparedCount());
+	}
+	
+	/**
+	 * @return The shader of this context, or null if none of its windows is open
+	 */
+	public GuiShader getShader() {
+		return shader;
+	}
+	
+	public List<GLGuiWindow> getWindows() {
+		return windows;
+	}
+	
+	/**
+	 * Gets the 1x1 texture that is used to fill rectangles with the given color. The texture will be created
+	 * if it doesn't exist yet.
+	 * @param argb The color in the same format as java.awt.Color.getRGB()
+	 * @return a texture with a single pixel of the given color
+	 */
+	public GuiTexture getFilledTexture(int argb) {
+		GuiTexture texture = colorMap.get(argb);
+		if (texture == null) {
+			BufferedImage image = new BufferedImage(1, 1, argb >>> 24 == 0xFF ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+			image.setRGB(0, 0, argb);
+			texture = textureLoader.loadTexture(image);
+			colorMap.put(argb, texture);
+		}
+		return texture;
+	}
+	
+	/**
+	 * @return The number of bytes of texture data that is shared by all windows of this context
+	 */
+	public long getSharedMemory() {
+		return textureLoader.getTextureMemory();
+	}
+	
+	/**
+	 * Prints how much memory is shared by the windows of this context and how much memory every window
+	 * uses on its own. The latter is the cost of every extra window.
+	 * @param output The stream to print the report to
+	 */
+	public void printMemoryReport(PrintStream output) {
+		output.println("Shared texture memory: " + getSharedMemory() + " bytes");
+		output.println("Texture reuse: " + (int) (100 * textureLoader.getHitRate()) + "% hit rate, " + textureLoader.getBytesSaved() + " bytes saved");
+		output.println("Staging buffers: " + textureLoader.getStagingPool().getCurrentOffHeapBytes() + " bytes off-heap, " + textureLoader.getStagingPool().getPeakOffHeapBytes() + " bytes at peak");
+		output.println("Texture uploads: " + textureLoader.getLastFrameUploadBytes() + " bytes last frame, " + textureLoader.getTotalUploadBytes() + " bytes in total");
+		if (trimCount > 0)
+			output.println("Last trim: " + memoryBeforeTrim + " bytes before, " + memoryAfterTrim + " bytes after, " + getResidentMemory() + " bytes now");
+		for (GLGuiWindow window : windows)
+			output.println("Window " + window.getWindowID() + " uses " + window.getMemoryUsage() + " extra bytes");
+	}
+}
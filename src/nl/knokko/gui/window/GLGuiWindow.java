@@ -24,6 +24,7 @@
 package nl.knokko.gui.window;
 
 import java.nio.IntBuffer;
+import java.util.function.IntConsumer;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.Callbacks;
@@ -31,22 +32,25 @@ import org.lwjgl.glfw.GLFW;
 import org.lwjgl.glfw.GLFWVidMode;
 import org.lwjgl.glfw.GLFWVidMode.Buffer;
 import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
 import org.lwjgl.system.MemoryUtil;
 
+import nl.knokko.gui.capture.CaptureWriter;
 import nl.knokko.gui.component.GuiComponent;
+import nl.knokko.gui.component.TextInputComponent;
 import nl.knokko.gui.component.state.GLComponentState;
 import nl.knokko.gui.component.state.GuiComponentState;
 import nl.knokko.gui.keycode.GLKeyConverter;
 import nl.knokko.gui.render.GLGuiRenderer;
-import nl.knokko.gui.texture.loader.GLGuiTextureLoader;
 import nl.knokko.gui.texture.loader.GuiTextureLoader;
 import nl.knokko.gui.util.CharBuilder;
 
 public class GLGuiWindow extends GuiWindow {
 
-	private final GLGuiTextureLoader textureLoader;
+	private final GLGuiContext context;
 	private final GLGuiRenderer guiRenderer;
-	private final CharBuilder charBuilder;
+	
+	private GLCapabilities capabilities;
 
 	private int innerWidth;
 	private int innerHeight;
@@ -63,17 +67,50 @@ public class GLGuiWindow extends GuiWindow {
 
 	private float mouseDX;
 	private float mouseDY;
+	
+	private CaptureWriter capture;
+	private IntConsumer captureDeleteListener;
+	
+	private boolean hoverFiltering;
+	private long lastHoverKey;
+	private long hoverChanges;
+	private long avoidedRenders;
+	
+	private int[] textInput;
+	private int textInputLength;
+	private long textInputBatches;
+	private long textInputCodePoints;
+	
+	private boolean iconified;
+	private boolean focused;
+	
+	private final LatencyTracker latency;
 
 	public GLGuiWindow() {
-		textureLoader = new GLGuiTextureLoader();
-		guiRenderer = new GLGuiRenderer(this, textureLoader);
-		charBuilder = new CharBuilder(textureLoader);
+		this(new GLGuiContext());
 	}
 
 	public GLGuiWindow(GuiComponent mainComponent) {
 		this();
 		this.mainComponent = mainComponent;
 	}
+	
+	/**
+	 * Creates a window that will share its textures, shader and run loop with the other windows of the given
+	 * context.
+	 * @param context The context of the new window
+	 */
+	public GLGuiWindow(GLGuiContext context) {
+		this.context = context;
+		guiRenderer = new GLGuiRenderer(this, context.getTextureLoader());
+		textInput = new int[16];
+		latency = new LatencyTracker(context.getClock());
+	}
+	
+	public GLGuiWindow(GLGuiContext context, GuiComponent mainComponent) {
+		this(context);
+		this.mainComponent = mainComponent;
+	}
 
 	protected void ensureOnMainThread() {
 		Thread current = Thread.currentThread();
@@ -85,11 +122,104 @@ public class GLGuiWindow extends GuiWindow {
 	public long getWindowID() {
 		return windowID;
 	}
+	
+	public GLGuiContext getContext() {
+		return context;
+	}
+	
+	/**
+	 * @return The estimated number of bytes this window needs in addition to the memory that is shared with
+	 * the other windows of its context
+	 */
+	public long getMemoryUsage() {
+		return guiRenderer.getMemoryUsage();
+	}
+	
+	/**
+	 * Starts writing the render commands and input events of this window to the given capture writer. The
+	 * capture will be closed when the window is closed.
+	 * @param capture The capture writer, or null to stop capturing
+	 */
+	public void setCapture(CaptureWriter capture) {
+		if (this.capture != null)
+			context.getTextureLoader().removeDeleteListener(captureDeleteListener);
+		this.capture = capture;
+		guiRenderer.setCapture(capture);
+		if (capture != null) {
+			captureDeleteListener = capture::onTextureDeleted;
+			context.getTextureLoader().addDeleteListener(captureDeleteListener);
+		}
+	}
+	
+	public CaptureWriter getCapture() {
+		return capture;
+	}
+	
+	/**
+	 * Enables or disables hover filtering. Normally, every cursor movement marks the window as changed so that
+	 * it will be rendered again. When hover filtering is enabled, the renderer keeps a spatial index of the areas
+	 * of the last rendered frame and cursor movements only mark a change when the cursor enters or leaves an 
+	 * area or while a mouse button is held down. This is only correct if no component renders differently
+	 * depending on the exact cursor position within its own area.
+	 * @param enabled true to enable hover filtering, false to disable it
+	 */
+	public void setHoverFiltering(boolean enabled) {
+		hoverFiltering = enabled;
+		guiRenderer.setSpatialIndexing(enabled);
+		markChange();
+	}
+	
+	/**
+	 * @return The number of cursor movements that changed the areas under the cursor while hover filtering
+	 * was enabled
+	 */
+	public long getHoverChanges() {
+		return hoverChanges;
+	}
+	
+	/**
+	 * @return The number of cursor movements that didn't need a render thanks to hover filtering or because the
+	 * overload controller skips hover renders
+	 */
+	public long getAvoidedRenders() {
+		return avoidedRenders;
+	}
+	
+	private void onCursorMove() {
+		
+		// Components that are being dragged move with the cursor, even if the areas under the cursor stay the same
+		if (input.isMouseButtonDown(1) || input.isMouseButtonDown(2) || input.isMouseButtonDown(3)) {
+			markChange();
+			return;
+		}
+		if (context.getOverloadController().isActive(OverloadController.Degradation.SKIP_HOVER_RENDERS)) {
+			avoidedRenders++;
+			return;
+		}
+		if (hoverFiltering) {
+			long hoverKey = guiRenderer.getSpatialIndex().getHoverKey(mouseX, mouseY);
+			if (hoverKey != lastHoverKey) {
+				lastHoverKey = hoverKey;
+				hoverChanges++;
+				markChange();
+			} else {
+				avoidedRenders++;
+			}
+		} else {
+			markChange();
+		}
+	}
+	
+	void makeContextCurrent() {
+		GLFW.glfwMakeContextCurrent(windowID);
+		GL.setCapabilities(capabilities);
+	}
 
 	@Override
 	protected void directOpen(String title, int width, int height, boolean border) {
 		ensureOnMainThread();
 		GLFW.glfwInit();
+		context.getStartupTimeline().mark("glfwInit");
 		GLFW.glfwWindowHint(GLFW.GLFW_RESIZABLE, GLFW.GLFW_TRUE);
 		GLFW.glfwWindowHint(GLFW.GLFW_DECORATED, border ? GLFW.GLFW_TRUE : GLFW.GLFW_FALSE);
 		
@@ -97,7 +227,8 @@ public class GLGuiWindow extends GuiWindow {
 		// windowHeight at this point, but this will be fixed in afterOpen()
 		this.innerWidth = width;
 		this.innerHeight = height;
-		windowID = GLFW.glfwCreateWindow(width, height, title, MemoryUtil.NULL, MemoryUtil.NULL);
+		windowID = GLFW.glfwCreateWindow(width, height, title, MemoryUtil.NULL, context.getShareWindowID());
+		context.getStartupTimeline().mark("window created");
 		afterOpen();
 	}
 
@@ -105,6 +236,7 @@ public class GLGuiWindow extends GuiWindow {
 	protected void directOpen(String title, boolean border) {
 		ensureOnMainThread();
 		GLFW.glfwInit();
+		context.getStartupTimeline().mark("glfwInit");
 		long monitor;
 		if (border) {
 			monitor = MemoryUtil.NULL;
@@ -125,7 +257,8 @@ public class GLGuiWindow extends GuiWindow {
 		this.innerHeight = videoMode.height();
 
 		GLFW.glfwWindowHint(GLFW.GLFW_DECORATED, border ? 1 : 0);
-		windowID = GLFW.glfwCreateWindow(this.innerWidth, this.innerHeight, title, monitor, MemoryUtil.NULL);
+		windowID = GLFW.glfwCreateWindow(this.innerWidth, this.innerHeight, title, monitor, context.getShareWindowID());
+		context.getStartupTimeline().mark("window created");
 		afterOpen();
 	}
 
@@ -145,7 +278,9 @@ public class GLGuiWindow extends GuiWindow {
 		this.innerHeight -= this.insetTop;
 		GLFW.glfwSetWindowSize(windowID, this.innerWidth, this.innerHeight);
 		GLFW.glfwMakeContextCurrent(windowID);
-		GL.createCapabilities();
+		capabilities = GL.createCapabilities();
+		context.getStartupTimeline().mark("GL capabilities created");
+		context.onOpen(this);
 		// GL11.glViewport(0, 0, Display.getWidth(), Display.getHeight());
 		guiRenderer.init();
 		GLFW.glfwSetWindowSizeCallback(windowID, (long windowID, int width, int height) -> {
@@ -167,21 +302,37 @@ public class GLGuiWindow extends GuiWindow {
 				this.positionY = newY - this.insetTop;
 			}
 		});
+		focused = GLFW.glfwGetWindowAttrib(windowID, GLFW.GLFW_FOCUSED) == GLFW.GLFW_TRUE;
+		GLFW.glfwSetWindowIconifyCallback(windowID, (long windowID, boolean iconified) -> {
+			this.iconified = iconified;
+			
+			// Iconified windows are not rendered, so a new frame is needed when it is restored
+			if (!iconified)
+				markChange();
+			context.onVisibilityChange();
+		});
+		GLFW.glfwSetWindowFocusCallback(windowID, (long windowID, boolean focused) -> {
+			this.focused = focused;
+			context.onVisibilityChange();
+		});
 		GLFW.glfwSetCharCallback(windowID, (long windowID, int codePoint) -> {
-			if (codePoint > Character.MAX_VALUE) {
-				System.out.println("Unsupported character (" + codePoint + ")");
-				// TODO Add proper support for high code points
-				return;
-			}
-			char character = (char) codePoint;
-			if (listener == null || !listener.preKeyPressed(character)) {
-				mainComponent.keyPressed(character);
-				if (listener != null) {
-					listener.postKeyPressed(character);
-				}
+			onInput(LatencyTracker.Input.CHAR);
+			if (capture != null)
+				capture.writeChar(codePoint);
+			
+			// The characters will be dispatched together by flushTextInput
+			if (textInputLength == textInput.length) {
+				int[] newTextInput = new int[2 * textInputLength];
+				System.arraycopy(textInput, 0, newTextInput, 0, textInputLength);
+				textInput = newTextInput;
 			}
+			textInput[textInputLength++] = codePoint;
 		});
 		GLFW.glfwSetKeyCallback(windowID, (long windowID, int glKey, int scancode, int action, int mods) -> {
+			onInput(LatencyTracker.Input.KEY);
+			flushTextInput();
+			if (capture != null)
+				capture.writeKey(glKey, action);
 			int[] keys = GLKeyConverter.get(glKey);
 			if (keys != null) {
 				for (int key : keys) {
@@ -208,18 +359,25 @@ public class GLGuiWindow extends GuiWindow {
 			}
 		});
 		GLFW.glfwSetCursorPosCallback(windowID, (long windowID, double newX, double newY) -> {
+			onInput(LatencyTracker.Input.CURSOR);
 			float newMouseX = (float) (newX / this.innerWidth);
 			float newMouseY = 1f - (float) (newY / this.innerHeight);
-			this.mouseDX = newMouseX - this.mouseX;
-			this.mouseDY = newMouseY - this.mouseY;
+			
+			// The movements are accumulated until the next update, including those that arrive while the pacer waits
+			this.mouseDX += newMouseX - this.mouseX;
+			this.mouseDY += newMouseY - this.mouseY;
 			this.mouseX = newMouseX;
 			this.mouseY = newMouseY;
-			markChange();
+			if (capture != null)
+				capture.writeMouseMove(newMouseX, newMouseY);
+			onCursorMove();
 		});
 		GLFW.glfwSetCursorEnterCallback(windowID, (long windowID, boolean entered) -> {
 			if (!entered) {
 				this.mouseX = Float.NaN;
 				this.mouseY = Float.NaN;
+				if (capture != null)
+					capture.writeMouseMove(Float.NaN, Float.NaN);
 				markChange();
 			}
 		});
@@ -228,6 +386,10 @@ public class GLGuiWindow extends GuiWindow {
 			// The gui library works with buttons starting from 1 instead of 0, so a simple
 			// fix:
 			button++;
+			onInput(LatencyTracker.Input.CLICK);
+			flushTextInput();
+			if (capture != null)
+				capture.writeMouseButton(button, action);
 
 			if (action == GLFW.GLFW_PRESS) {
 				input.setMouseDown(button);
@@ -246,6 +408,10 @@ public class GLGuiWindow extends GuiWindow {
 		GLFW.glfwSetScrollCallback(windowID, (long windowID, double offsetX, double offsetY) -> {
 			// The magic number 0.04 appears to be necessary to make scrolling the same as in AWTGuiWindow.
 			float scroll = (float) (offsetY * 0.04);
+			onInput(LatencyTracker.Input.SCROLL);
+			flushTextInput();
+			if (capture != null)
+				capture.writeScroll(scroll);
 			if (listener != null) {
 				scroll = listener.preScroll(scroll);
 			}
@@ -261,9 +427,138 @@ public class GLGuiWindow extends GuiWindow {
 	@Override
 	protected void preUpdate() {
 		ensureOnMainThread();
+		
+		// The run loop of the context polls the events for all its windows at once
+		if (!context.isRunning()) {
+			resetMouseDelta();
+			GLFW.glfwPollEvents();
+		}
+		flushTextInput();
+	}
+	
+	/**
+	 * Dispatches the characters that were typed since the last flush. If the main component is a
+	 * TextInputComponent (like a ParallelGuiMenu), it gets all characters in a single textInput call. Otherwise,
+	 * it gets a keyPressed call for every char, which is the case for a plain GuiMenu. The window listener still
+	 * gets its preKeyPressed and postKeyPressed calls for every char, and chars that are consumed by the listener
+	 * won't be passed to the main component.
+	 */
+	private void flushTextInput() {
+		if (textInputLength == 0)
+			return;
+		int length = textInputLength;
+		
+		// Clear it first in case the components cause new events to be polled
+		textInputLength = 0;
+		textInputBatches++;
+		textInputCodePoints += length;
+		if (mainComponent instanceof TextInputComponent) {
+			StringBuilder text = new StringBuilder(length);
+			for (int index = 0; index < length; index++) {
+				int codePoint = textInput[index];
+				if (listener == null) {
+					text.appendCodePoint(codePoint);
+				} else {
+					for (char character : Character.toChars(codePoint))
+						if (!listener.preKeyPressed(character))
+							text.append(character);
+				}
+			}
+			if (text.length() > 0) {
+				((TextInputComponent) mainComponent).textInput(text.toString());
+				if (listener != null)
+					for (int index = 0; index < text.length(); index++)
+						listener.postKeyPressed(text.charAt(index));
+			}
+		} else {
+			for (int index = 0; index < length; index++) {
+				for (char character : Character.toChars(textInput[index])) {
+					if (listener == null || !listener.preKeyPressed(character)) {
+						mainComponent.keyPressed(character);
+						if (listener != null) {
+							listener.postKeyPressed(character);
+						}
+					}
+				}
+			}
+		}
+		
+		// Don't keep a big buffer alive after a large paste
+		if (textInput.length > 4096 && textInputLength == 0)
+			textInput = new int[16];
+	}
+	
+	/**
+	 * Checks whether the overload controller wants this window to skip rendering during this iteration
+	 */
+	private boolean isThrottled() {
+		return !focused && context.getIterations() % OverloadController.UNFOCUSED_RENDER_INTERVAL != 0 
+				&& context.getOverloadController().isActive(OverloadController.Degradation.THROTTLE_UNFOCUSED);
+	}
+	
+	private void onInput(LatencyTracker.Input input) {
+		latency.onInput(input);
+		context.getPacer().signalInput();
+	}
+	
+	/**
+	 * Renders this window unless it is iconified and tells the latency tracker whether a frame was presented
+	 */
+	private void renderAndTrack() {
+		
+		// The pending input will be presented by a later iteration
+		if (isThrottled())
+			return;
+		long swapCount = guiRenderer.getSwapCount();
+		if (!iconified)
+			render();
+		latency.afterRender(guiRenderer.getSwapCount() != swapCount);
+	}
+	
+	/**
+	 * Renders the result of the input that arrived while the run loop of the context was waiting for the next
+	 * iteration. This is used by the render-on-input mode of the context.
+	 */
+	void renderInput() {
+		flushTextInput();
+		renderAndTrack();
+	}
+	
+	/**
+	 * @return The tracker that measures the latency between input events and the frames that show their result
+	 */
+	public LatencyTracker getLatencyTracker() {
+		return latency;
+	}
+	
+	/**
+	 * @return true if this window is currently iconified (minimized), in which case it won't be rendered
+	 */
+	public boolean isIconified() {
+		return iconified;
+	}
+	
+	public boolean isFocused() {
+		return focused;
+	}
+	
+	/**
+	 * @return The number of times typed characters were dispatched to the main component
+	 */
+	public long getTextInputBatches() {
+		return textInputBatches;
+	}
+	
+	/**
+	 * @return The number of code points that were typed in this window
+	 */
+	public long getTextInputCodePoints() {
+		return textInputCodePoints;
+	}
+	
+	private void resetMouseDelta() {
 		this.mouseDX = 0;
 		this.mouseDY = 0;
-		GLFW.glfwPollEvents();
 	}
 
 	@Override
@@ -272,50 +567,63 @@ public class GLGuiWindow extends GuiWindow {
 
 	@Override
 	protected void directRender() {
+		context.makeCurrent(this);
 		mainComponent.render(guiRenderer);
 		guiRenderer.maybeRenderNow();
+		context.afterRender();
+		
+		// The areas of the new frame can be different, so the hover key needs to be computed again
+		if (hoverFiltering)
+			lastHoverKey = guiRenderer.getSpatialIndex().getHoverKey(mouseX, mouseY);
 	}
 
 	@Override
 	protected void directClose() {
 		ensureOnMainThread();
-		textureLoader.clean();
+		context.makeCurrent(this);
+		if (capture != null) {
+			capture.close();
+			context.getTextureLoader().removeDeleteListener(captureDeleteListener);
+		}
 		guiRenderer.clean();
-		GL.destroy();
+		boolean lastWindow = context.onClose(this);
+		if (lastWindow)
+			GL.destroy();
 		Callbacks.glfwFreeCallbacks(windowID);
 		GLFW.glfwDestroyWindow(windowID);
-		GLFW.glfwTerminate();
+		if (lastWindow)
+			GLFW.glfwTerminate();
+	}
+	
+	boolean shouldClose() {
+		return GLFW.glfwWindowShouldClose(windowID) || shouldStopRunning;
+	}
+	
+	void runIteration() {
+		flushTextInput();
+		if (listener == null || !listener.preRunLoop()) {
+			update();
+			renderAndTrack();
+			if (listener != null)
+				listener.postRunLoop();
+		}
+		
+		// The update has consumed the mouse movement, or the listener skipped it, so it starts again at 0
+		resetMouseDelta();
 	}
 
+	/**
+	 * Runs the loop of the context of this window, see GLGuiContext.run(int). If this window is the only window
+	 * of its context, the loop will stop and this window will be closed when the window should close.
+	 */
 	@Override
 	public void run(int fps) {
-		ensureOnMainThread();
-		long delay = 1000000000 / fps;
-		while (!GLFW.glfwWindowShouldClose(windowID) && !shouldStopRunning) {
-			long startTime = System.nanoTime();
-			if (listener == null || !listener.preRunLoop()) {
-				update();
-				render();
-				if (listener != null)
-					listener.postRunLoop();
-			}
-			long endTime = System.nanoTime();
-			long passedTime = endTime - startTime;
-			long sleepTime = delay - passedTime;
-			if (sleepTime > 0) {
-				try {
-					Thread.sleep(sleepTime / 1000000, (int) (sleepTime % 1000000));
-				} catch (InterruptedException e) {
-					throw new RuntimeException("Unexpected interrupt", e);
-				}
-			}
-		}
-		close();
+		context.run(fps);
 	}
 
 	@Override
 	public GuiTextureLoader getTextureLoader() {
-		return textureLoader;
+		return context.getTextureLoader();
 	}
 
 	@Override
@@ -325,7 +633,7 @@ public class GLGuiWindow extends GuiWindow {
 
 	@Override
 	public CharBuilder getCharBuilder() {
-		return charBuilder;
+		return context.getCharBuilder();
 	}
 
 	@Override
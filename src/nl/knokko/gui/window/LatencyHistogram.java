@@ -0,0 +1,103 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+/**
+ * A histogram of latencies with a bucket for every power of 2 microseconds. Recording is constant time and
+ * doesn't allocate, so it can be done for every input event.
+ * @author knokko
+ *
+ */
+public class LatencyHistogram {
+	
+	private static final int BUCKETS = 32;
+	
+	private final long[] counts = new long[BUCKETS];
+	
+	private long count;
+	private long total;
+	private long max;
+	
+	private static int getBucket(long nanos) {
+		long micros = Math.max(0, nanos / 1000);
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+	
+	public void record(long nanos) {
+		counts[getBucket(nanos)]++;
+		count++;
+		total += nanos;
+		if (nanos > max)
+			max = nanos;
+	}
+	
+	public long getCount() {
+		return count;
+	}
+	
+	public long getMean() {
+		return count == 0 ? 0 : total / count;
+	}
+	
+	public long getMax() {
+		return max;
+	}
+	
+	/**
+	 * Estimates the given percentile of the recorded latencies. The result is the upper bound of the bucket
+	 * that contains the percentile, so it is at most 2 times too large.
+	 * @param percentile The percentile, between 0 and 100
+	 * @return the estimated percentile in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getPercentile(double percentile) {
+		long wanted = (long) Math.ceil(count * percentile / 100);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; bucket++) {
+			seen += counts[bucket];
+			if (seen >= wanted && seen > 0)
+				return Math.min(max, 1000L << bucket);
+		}
+		return 0;
+	}
+	
+	/**
+	 * @return The number of recorded latencies in the given bucket. Bucket 0 contains the latencies below
+	 * 1 microsecond and bucket b > 0 contains the latencies from 2^(b-1) up to 2^b microseconds.
+	 */
+	public long getBucketCount(int bucket) {
+		return counts[bucket];
+	}
+	
+	public int getNumBuckets() {
+		return BUCKETS;
+	}
+	
+	public void reset() {
+		for (int bucket = 0; bucket < BUCKETS; bucket++)
+			counts[bucket] = 0;
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+}
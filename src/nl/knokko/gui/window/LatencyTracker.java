@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+import java.io.PrintStream;
+
+import nl.knokko.gui.render.FrameMetrics;
+
+/**
+ * Measures the time between input events and the buffer swap that shows their result. The input callbacks of
+ * the window timestamp every event with onInput. The first swap after an event completes its latency. Events
+ * that are followed by a render that doesn't swap didn't change anything on the screen, so they are counted
+ * as unrendered instead.
+ * @author knokko
+ *
+ */
+public class LatencyTracker {
+	
+	public static enum Input {
+		
+		KEY,
+		CHAR,
+		CLICK,
+		SCROLL,
+		CURSOR;
+		
+		private final String metric = "latency." + name().toLowerCase();
+	}
+	
+	private final LatencyHistogram[] histograms;
+	
+	/**
+	 * The timestamps of the events that haven't been presented yet, per input type. Only the oldest event of
+	 * every type is remembered because later events of that type will be presented by the same swap.
+	 */
+	private final long[] pendingSince;
+	private final boolean[] pending;
+	
+	private Clock clock;
+	private FrameMetrics metrics;
+	
+	private long unrenderedInputs;
+	
+	public LatencyTracker(Clock clock) {
+		this.clock = clock;
+		Input[] inputs = Input.values();
+		histograms = new LatencyHistogram[inputs.length];
+		for (int index = 0; index < inputs.length; index++)
+			histograms[index] = new LatencyHistogram();
+		pendingSince = new long[inputs.length];
+		pending = new boolean[inputs.length];
+	}
+	
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+	
+	/**
+	 * Sets the metrics that will also receive every measured latency, for instance the metrics of the renderer
+	 * @param metrics The metrics, or null to only use the histograms of this tracker
+	 */
+	public void setMetrics(FrameMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Should be called by the input callbacks when an event has been received
+	 */
+	public void onInput(Input input) {
+		int index = input.ordinal();
+		if (!pending[index]) {
+			pending[index] = true;
+			pendingSince[index] = clock.nanoTime();
+		}
+	}
+	
+	/**
+	 * Should be called after every attempt to render the window
+	 * @param swapped true if the buffers were swapped, false if nothing was presented
+	 */
+	public void afterRender(boolean swapped) {
+		long time = swapped ? clock.nanoTime() : 0;
+		for (int index = 0; index < pending.length; index++) {
+			if (pending[index]) {
+				pending[index] = false;
+				if (swapped) {
+					long latency = time - pendingSince[index];
+					histograms[index].record(latency);
+					if (metrics != null)
+						metrics.record(Input.values()[index].metric, latency);
+				} else {
+					unrenderedInputs++;
+				}
+			}
+		}
+	}
+	
+	public LatencyHistogram getHistogram(Input input) {
+		return histograms[input.ordinal()];
+	}
+	
+	/**
+	 * @return The number of times input events were followed by a render that didn't present anything
+	 */
+	public long getUnrenderedInputs() {
+		return unrenderedInputs;
+	}
+	
+	public void reset() {
+		for (LatencyHistogram histogram : histograms)
+			histogram.reset();
+		unrenderedInputs = 0;
+	}
+	
+	/**
+	 * Prints the mean, median, 99th percentile and maximum latency of every input type in milliseconds
+	 * @param output The stream to print the report to
+	 */
+	public void printReport(PrintStream output) {
+		for (Input input : Input.values()) {
+			LatencyHistogram histogram = histograms[input.ordinal()];
+			if (histogram.getCount() > 0) {
+				output.println(String.format("%-8s mean %6.2f ms, p50 %6.2f ms, p99 %6.2f ms, max %6.2f ms (%d events)", input.name().toLowerCase(), 
+						histogram.getMean() / 1e6, histogram.getPercentile(50) / 1e6, histogram.getPercentile(99) / 1e6, histogram.getMax() / 1e6, histogram.getCount()));
+			}
+		}
+		output.println("Inputs without visible result: " + unrenderedInputs);
+	}
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+import java.io.PrintStream;
+
+import nl.knokko.gui.render.FrameMetrics;
+
+/**
+ * Watches the frame times of the run loop of a GLGuiContext and enables degradations when the frames don't fit
+ * in their budget. The degradations are enabled one at a time, in the order of the steps. A step is taken when
+ * the average frame time of a full window of frames exceeds the budget. The last step is undone when the
+ * average stays below the recover ratio of the budget for a number of consecutive frames. After every change,
+ * the window is filled again before the next decision, so the controller doesn't oscillate.
+ * 
+ * The controller is disabled by default.
+ * @author knokko
+ *
+ */
+public class OverloadController {
+	
+	public static enum Degradation {
+		
+		/**
+		 * Cursor movements while no mouse button is down don't cause renders
+		 */
+		SKIP_HOVER_RENDERS,
+		
+		/**
+		 * Windows without focus are only rendered every UNFOCUSED_RENDER_INTERVAL iterations
+		 */
+		THROTTLE_UNFOCUSED,
+		
+		/**
+		 * Mipmapped textures are sampled from 1 level smaller than normal
+		 */
+		LOWER_TEXTURE_RESOLUTION,
+		
+		/**
+		 * Update slices with a negative priority are not run
+		 */
+		DEFER_NON_CRITICAL
+	}
+	
+	public static final int DEFAULT_WINDOW_SIZE = 30;
+	public static final int DEFAULT_RECOVER_FRAMES = 120;
+	public static final double DEFAULT_RECOVER_RATIO = 0.75;
+	public static final int UNFOCUSED_RENDER_INTERVAL = 4;
+	
+	private final long[] frameTimes;
+	
+	private Degradation[] steps;
+	private double recoverRatio;
+	private int recoverFrames;
+	private boolean enabled;
+	private FrameMetrics metrics;
+	
+	private int sampleCount;
+	private int nextSample;
+	private long sampleSum;
+	private int recoveringFrames;
+	private int level;
+	private long changes;
+	
+	private long escalations;
+	private long recoveries;
+	private long[] levelFrames;
+	
+	public OverloadController(int windowSize) {
+		frameTimes = new long[windowSize];
+		steps = Degradation.values();
+		recoverRatio = DEFAULT_RECOVER_RATIO;
+		recoverFrames = DEFAULT_RECOVER_FRAMES;
+		levelFrames = new long[steps.length + 1];
+	}
+	
+	public OverloadController() {
+		this(DEFAULT_WINDOW_SIZE);
+	}
+	
+	/**
+	 * Records the time the last frame took and changes the level if needed.
+	 * @param frameTime The time the frame took, in nanoseconds
+	 * @param budget The time the frame was allowed to take, in nanoseconds
+	 * @return true if the level was changed
+	 */
+	public boolean recordFrame(long frameTime, long budget) {
+		if (!enabled)
+			return false;
+		levelFrames[level]++;
+		if (sampleCount == frameTimes.length)
+			sampleSum -= frameTimes[nextSample];
+		else
+			sampleCount++;
+		frameTimes[nextSample] = frameTime;
+		sampleSum += frameTime;
+		nextSample = (nextSample + 1) % frameTimes.length;
+		if (metrics != null)
+			metrics.record("overload.frame", frameTime);
+		if (sampleCount < frameTimes.length)
+			return false;
+		long average = sampleSum / sampleCount;
+		if (average > budget && level < steps.length) {
+			escalations++;
+			setLevel(level + 1);
+			return true;
+		}
+		if (average < budget * recoverRatio && level > 0) {
+			if (++recoveringFrames >= recoverFrames) {
+				recoveries++;
+				setLevel(level - 1);
+				return true;
+			}
+		} else {
+			recoveringFrames = 0;
+		}
+		return false;
+	}
+	
+	private void setLevel(int newLevel) {
+		level = newLevel;
+		changes++;
+		sampleCount = 0;
+		nextSample = 0;
+		sampleSum = 0;
+		recoveringFrames = 0;
+	}
+	
+	/**
+	 * @return true if the given degradation is currently enabled
+	 */
+	public boolean isActive(Degradation degradation) {
+		for (int index = 0; index < level; index++)
+			if (steps[index] == degradation)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Enables or disables this controller. Disabling it also undoes all degradations.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+		if (!enabled)
+			setLevel(0);
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Sets the degradations this controller can enable, in the order they should be enabled. This resets the
+	 * level to 0.
+	 */
+	public void setSteps(Degradation... steps) {
+		this.steps = steps.clone();
+		levelFrames = new long[steps.length + 1];
+		setLevel(0);
+	}
+	
+	/**
+	 * Sets the fraction of the budget the average frame time must stay below before a degradation is undone
+	 */
+	public void setRecoverRatio(double recoverRatio) {
+		this.recoverRatio = recoverRatio;
+	}
+	
+	/**
+	 * Sets the number of consecutive frames the average frame time must stay below the recover ratio of the
+	 * budget before a degradation is undone
+	 */
+	public void setRecoverFrames(int recoverFrames) {
+		this.recoverFrames = recoverFrames;
+	}
+	
+	/**
+	 * Sets the metrics that will receive the time of every frame as "overload.frame"
+	 */
+	public void setMetrics(FrameMetrics metrics) {
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * @return The number of degradations that are currently enabled
+	 */
+	public int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * @return A number that changes whenever the degradations that are enabled might have changed, which
+	 * happens when the level changes or when the controller is disabled or gets new steps
+	 */
+	public long getChanges() {
+		return changes;
+	}
+	
+	public long getEscalations() {
+		return escalations;
+	}
+	
+	public long getRecoveries() {
+		return recoveries;
+	}
+	
+	public long getTransitions() {
+		return escalations + recoveries;
+	}
+	
+	/**
+	 * @return The number of frames that were recorded while the given number of degradations was enabled
+	 */
+	public long getLevelFrames(int level) {
+		return levelFrames[level];
+	}
+	
+	/**
+	 * Prints the current level, the number of transitions and how many frames were spent at every level
+	 */
+	public void printReport(PrintStream output) {
+		output.println("Overload level " + level + " of " + steps.length + ", " + escalations + " escalations, " + recoveries + " recoveries");
+		for (int index = 0; index <= steps.length; index++)
+			output.println("  level " + index + (index == 0 ? " (full quality)" : " (" + steps[index - 1] + ")") + ": " + levelFrames[index] + " frames");
+	}
+}
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+
+import nl.knokko.gui.shader.GuiShader;
+import nl.knokko.gui.texture.loader.GLGuiTextureLoader;
+import nl.knokko.gui.util.GLCharBuilder;
+
+/**
+ * Does the work of the startup of a GLGuiContext that doesn't need OpenGL on background threads, so that it
+ * overlaps with the creation of the window and its OpenGL context. The shader sources are read as soon as the
+ * context is constructed. Applications can ask it to decode textures and rasterize characters before the first
+ * window is opened. When the first window has been opened, the context calls flush to upload the prepared work.
+ * Requests that are made after that are simply handled on the calling thread.
+ * @author knokko
+ *
+ */
+public class StartupOrchestrator {
+	
+	private final GLGuiTextureLoader textureLoader;
+	private final GLCharBuilder charBuilder;
+	private final StartupTimeline timeline;
+	
+	private final ExecutorService executor;
+	
+	private final Future<String> vertexSource;
+	private final Future<String> fragmentSource;
+	
+	private final List<String> texturePaths;
+	private final List<Future<BufferedImage>> decodedTextures;
+	private final List<Future<?>> glyphTasks;
+	
+	private PrintStream errorOutput;
+	
+	private boolean flushed;
+	
+	StartupOrchestrator(GLGuiTextureLoader textureLoader, GLCharBuilder charBuilder, StartupTimeline timeline) {
+		this.textureLoader = textureLoader;
+		this.charBuilder = charBuilder;
+		this.timeline = timeline;
+		int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+		executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+			
+			private int counter;
+
+			@Override
+			public Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "GLGui startup " + counter++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		vertexSource = executor.submit(new Callable<String>() {
+
+			@Override
+			public String call() {
+				return GuiShader.readVertexSource();
+			}
+		});
+		fragmentSource = executor.submit(new Callable<String>() {
+
+			@Override
+			public String call() {
+				String source = GuiShader.readFragmentSource();
+				timeline.mark("shader sources read");
+				return source;
+			}
+		});
+		texturePaths = new ArrayList<String>();
+		decodedTextures = new ArrayList<Future<BufferedImage>>();
+		glyphTasks = new ArrayList<Future<?>>();
+		errorOutput = System.out;
+	}
+	
+	private static BufferedImage decode(String texturePath) throws IOException {
+		URL resource = StartupOrchestrator.class.getClassLoader().getResource(texturePath);
+		if (resource == null)
+			throw new IOException("Can't find texture " + texturePath);
+		BufferedImage decoded = ImageIO.read(resource);
+		if (decoded == null)
+			throw new IOException("Unsupported image format");
+		
+		// The texture loader reads the pixels as ARGB ints, which is cheapest in this format
+		if (decoded.getType() == BufferedImage.TYPE_INT_ARGB || decoded.getType() == BufferedImage.TYPE_INT_RGB)
+			return decoded;
+		BufferedImage converted = new BufferedImage(decoded.getWidth(), decoded.getHeight(), 
+				decoded.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		int[] row = new int[decoded.getWidth()];
+		for (int y = 0; y < decoded.getHeight(); y++) {
+			decoded.getRGB(0, y, row.length, 1, row, 0, row.length);
+			converted.setRGB(0, y, row.length, 1, row, 0, row.length);
+		}
+		return converted;
+	}
+	
+	/**
+	 * Starts decoding the texture with the given resource path on a background thread. The texture will be
+	 * uploaded when the first window is opened, after which GLGuiTextureLoader.loadTexture(texturePath) won't
+	 * need to decode it anymore. If the first window has already been opened, the texture is loaded right away.
+	 * @param texturePath The resource path of the texture, like it would be passed to loadTexture
+	 */
+	public synchronized void preloadTexture(final String texturePath) {
+		if (flushed) {
+			textureLoader.loadTexture(texturePath);
+			return;
+		}
+		texturePaths.add(texturePath);
+		decodedTextures.add(executor.submit(new Callable<BufferedImage>() {
+
+			@Override
+			public BufferedImage call() throws IOException {
+				return decode(texturePath);
+			}
+		}));
+	}
+	
+	/**
+	 * Starts rasterizing the given characters on a background thread. The characters will be uploaded when
+	 * the first window is opened. If that already happened, they are rasterized and uploaded right away.
+	 */
+	public synchronized void prewarmGlyphs(final String characters, final Color color, final Font font) {
+		if (flushed) {
+			charBuilder.prepare(characters, color, font);
+			charBuilder.uploadPrepared();
+			return;
+		}
+		glyphTasks.add(executor.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				charBuilder.prepare(characters, color, font);
+			}
+		}));
+	}
+	
+	/**
+	 * Creates the shader from the sources that were read in the background. This must be called while the
+	 * OpenGL context is current.
+	 */
+	GuiShader createShader() {
+		GuiShader shader = new GuiShader(await(vertexSource), await(fragmentSource));
+		timeline.mark("shader compiled");
+		return shader;
+	}
+	
+	/**
+	 * Waits until all background work has been done and uploads the results. This must be called while the
+	 * OpenGL context is current.
+	 */
+	synchronized void flush() {
+		if (flushed)
+			return;
+		flushed = true;
+		executor.shutdown();
+		for (int index = 0; index < texturePaths.size(); index++) {
+			String texturePath = texturePaths.get(index);
+			try {
+				textureLoader.addDecodedTexture(texturePath, decodedTextures.get(index).get());
+			} catch (ExecutionException e) {
+				errorOutput.println("Can't preload texture '" + texturePath + "': " + e.getCause().getMessage());
+			} catch (InterruptedException e) {
+				throw new RuntimeException("Unexpected interrupt", e);
+			}
+		}
+		for (Future<?> task : glyphTasks)
+			await(task);
+		charBuilder.uploadPrepared();
+		texturePaths.clear();
+		decodedTextures.clear();
+		glyphTasks.clear();
+		timeline.mark("startup work flushed");
+	}
+	
+	private static <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Startup task failed", e.getCause());
+		} catch (InterruptedException e) {
+			throw new RuntimeException("Unexpected interrupt", e);
+		}
+	}
+	
+	public void setErrorOutput(PrintStream errorOutput) {
+		this.errorOutput = errorOutput;
+	}
+	
+	/**
+	 * @return true if the prepared work has been uploaded, which happens when the first window is opened
+	 */
+	public synchronized boolean isFlushed() {
+		return flushed;
+	}
+}
@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Remembers when the steps of the startup of a GLGuiContext happened, relative to the start of the process. 
+ * Only the first time a step is marked will be remembered.
+ * @author knokko
+ *
+ */
+public class StartupTimeline {
+	
+	private final long processStartNanos;
+	
+	private final List<String> steps;
+	private final List<Long> times;
+	
+	public StartupTimeline() {
+		long processAge = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+		processStartNanos = System.nanoTime() - 1000000L * processAge;
+		steps = new ArrayList<String>();
+		times = new ArrayList<Long>();
+	}
+	
+	/**
+	 * Marks that the given step has been completed right now, unless it was marked before.
+	 */
+	public synchronized void mark(String step) {
+		if (!steps.contains(step)) {
+			steps.add(step);
+			times.add(System.nanoTime() - processStartNanos);
+		}
+	}
+	
+	public synchronized boolean hasMarked(String step) {
+		return steps.contains(step);
+	}
+	
+	/**
+	 * @return The number of nanoseconds between the start of the process and the given step, or -1 if the step
+	 * hasn't been marked
+	 */
+	public synchronized long getTime(String step) {
+		int index = steps.indexOf(step);
+		return index == -1 ? -1 : times.get(index);
+	}
+	
+	/**
+	 * Prints every step in the order they were marked, together with the time since the start of the process
+	 * and the time since the previous step.
+	 * @param output The stream to print the report to
+	 */
+	public synchronized void printReport(PrintStream output) {
+		output.println("Startup timeline (ms since process start):");
+		long previous = 0;
+		for (int index = 0; index < steps.size(); index++) {
+			long time = times.get(index);
+			output.println(String.format("  %8.1f (+%7.1f) %s", time / 1000000.0, (time - previous) / 1000000.0, steps.get(index)));
+			previous = time;
+		}
+	}
+}
@@ -0,0 +1,254 @@
+/*******************************************************************************
+ * The MIT License
+ *
+ * Copyright (c) 2018 knokko
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *  
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ *******************************************************************************/
+package nl.knokko.gui.window;
+
+import java.io.PrintStream;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs incremental work of components within a time budget per frame, so that expensive work (like sorting a
+ * large table) doesn't make the frames of the window slow. Components split their work into slices and submit a
+ * WorkSlice to the scheduler of the context of their window. The run loop of the context runs the slices with
+ * the highest priority first until the budget of the frame is used. Slices that don't fit in the budget are
+ * deferred to the next frame or, if they allow it, handed to a background executor.
+ * @author knokko
+ *
+ */
+public class UpdateScheduler {
+	
+	public static final long DEFAULT_BUDGET = 4000000;
+	
+	private final PriorityQueue<Task> tasks;
+	
+	private Executor backgroundExecutor;
+	private long budget;
+	private int minimumPriority;
+	private long nextSequence;
+	
+	private long frameUsedTime;
+	private int frameSlices;
+	private int frameDeferred;
+	private int frameSpilled;
+	
+	private long totalSlices;
+	private long totalSpilled;
+	
+	public UpdateScheduler() {
+		tasks = new PriorityQueue<Task>();
+		backgroundExecutor = ForkJoinPool.commonPool();
+		budget = DEFAULT_BUDGET;
+		minimumPriority = Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Submits work that should only run on the main thread.
+	 * @param slice The work to run
+	 * @param priority Slices with a higher priority run first
+	 */
+	public void submit(WorkSlice slice, int priority) {
+		submit(slice, priority, false);
+	}
+	
+	/**
+	 * Submits work to this scheduler. This method can be called from any thread.
+	 * @param slice The work to run
+	 * @param priority Slices with a higher priority run first
+	 * @param allowBackground true if the slice may be completed on a background thread when it doesn't fit in 
+	 * the budget of the frame. Such slices must not touch OpenGL and must be thread safe.
+	 */
+	public synchronized void submit(WorkSlice slice, int priority, boolean allowBackground) {
+		tasks.add(new Task(slice, priority, allowBackground, nextSequence++));
+	}
+	
+	/**
+	 * Runs slices until the budget of this frame has been used or no slices are left. The run loop of the
+	 * GLGuiContext calls this method once per iteration.
+	 */
+	public void runFrame() {
+		long startTime = System.nanoTime();
+		long endTime = startTime + budget;
+		int slices = 0;
+		Task task;
+		while (System.nanoTime() < endTime && (task = poll()) != null) {
+			boolean more = task.slice.run();
+			slices++;
+			if (more) {
+				// Put it back behind the other slices with the same priority
+				submit(task.slice, task.priority, task.allowBackground);
+			}
+		}
+		frameUsedTime = System.nanoTime() - startTime;
+		frameSlices = slices;
+		totalSlices += slices;
+		spillLeftovers();
+	}
+	
+	private synchronized Task poll() {
+		Task next = tasks.peek();
+		return next != null && next.priority >= minimumPriority ? tasks.poll() : null;
+	}
+	
+	private synchronized void spillLeftovers() {
+		frameDeferred = 0;
+		frameSpilled = 0;
+		if (tasks.isEmpty())
+			return;
+		PriorityQueue<Task> remaining = new PriorityQueue<Task>(tasks.size());
+		for (Task task : tasks) {
+			if (task.allowBackground && task.priority >= minimumPriority) {
+				WorkSlice slice = task.slice;
+				backgroundExecutor.execute(() -> {
+					while (slice.run());
+				});
+				frameSpilled++;
+			} else {
+				remaining.add(task);
+				frameDeferred++;
+			}
+		}
+		tasks.clear();
+		tasks.addAll(remaining);
+		totalSpilled += frameSpilled;
+	}
+	
+	/**
+	 * Sets the maximum amount of time that can be spent on slices per frame.
+	 * @param budget The budget in nanoseconds
+	 */
+	public void setBudget(long budget) {
+		this.budget = budget;
+	}
+	
+	public long getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Sets the minimum priority of the slices that can run. Slices with a lower priority stay in the queue until
+	 * the minimum priority is lowered again. The overload controller uses this to defer slices with a negative
+	 * priority, which are considered non-critical.
+	 * @param minimumPriority The minimum priority, or Integer.MIN_VALUE to run all slices
+	 */
+	public synchronized void setMinimumPriority(int minimumPriority) {
+		this.minimumPriority = minimumPriority;
+	}
+	
+	public synchronized int getMinimumPriority() {
+		return minimumPriority;
+	}
+	
+	/**
+	 * Sets the executor that runs the slices that are moved to the background.
+	 */
+	public void setBackgroundExecutor(Executor executor) {
+		this.backgroundExecutor = executor;
+	}
+	
+	/**
+	 * @return The number of slices that are waiting for the next frame
+	 */
+	public synchronized int getPendingSlices() {
+		return tasks.size();
+	}
+	
+	/**
+	 * @return The time that was spent on slices during the last frame, in nanoseconds
+	 */
+	public long getFrameUsedTime() {
+		return frameUsedTime;
+	}
+	
+	/**
+	 * @return The number of slices that ran during the last frame
+	 */
+	public int getFrameSlices() {
+		return frameSlices;
+	}
+	
+	/**
+	 * @return The number of slices that didn't fit in the last frame and were deferred to the next frame
+	 */
+	public int getFrameDeferred() {
+		return frameDeferred;
+	}
+	
+	/**
+	 * @return The number of slices that didn't fit in the last frame and were moved to the background
+	 */
+	public int getFrameSpilled() {
+		return frameSpilled;
+	}
+	
+	public long getTotalSlices() {
+		return totalSlices;
+	}
+	
+	public long getTotalSpilled() {
+		return totalSpilled;
+	}
+	
+	/**
+	 * Prints how much of the budget the last frame used and how much work was deferred.
+	 */
+	public void printFrameReport(PrintStream output) {
+		output.println("Update slices: " + frameSlices + " ran in " + frameUsedTime / 1000 + " of " + budget / 1000 
+				+ " microseconds, " + frameDeferred + " deferred, " + frameSpilled + " moved to the background");
+	}
+	
+	/**
+	 * A piece of incremental work. The run method should do a small part of the work and return quickly.
+	 */
+	public static interface WorkSlice {
+		
+		/**
+		 * Does the next part of the work.
+		 * @return true if there is more work left, false if the work is done
+		 */
+		boolean run();
+	}
+	
+	private static class Task implements Comparable<Task> {
+		
+		private final WorkSlice slice;
+		private final int priority;
+		private final boolean allowBackground;
+		private final long sequence;
+		
+		private Task(WorkSlice slice, int priority, boolean allowBackground, long sequence) {
+			this.slice = slice;
+			this.priority = priority;
+			this.allowBackground = allowBackground;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Task other) {
+			if (priority != other.priority)
+				return priority > other.priority ? -1 : 1;
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}